@@ -0,0 +1,119 @@
+package Controller;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+import Service.MessageFeed;
+
+/**
+ * A Server-Sent Events response subscribed to the message feed. Frames are written with the servlet's non-blocking
+ * output: whoever finds frames pending (the feed thread, or Jetty once the socket can take more) writes while the
+ * output is ready and leaves the rest for the next onWritePossible, so no thread ever waits on a slow client.
+ * A client that stops reading lets its buffer fill up and is disconnected by the feed.
+ */
+class FeedConnection extends MessageFeed.Subscriber implements WriteListener {
+
+    private final MessageFeed feed;
+    private final ServletOutputStream out;
+    private final CompletableFuture<Void> closed = new CompletableFuture<>();
+    private final ReentrantLock writing = new ReentrantLock();
+    // guarded by writing; starts true so the first write sends the response headers at once
+    private boolean flushNeeded = true;
+
+    FeedConnection(MessageFeed feed, Integer postedBy, ServletOutputStream out) {
+        super(postedBy);
+        this.feed = feed;
+        this.out = out;
+    }
+
+    /**
+     * Subscribes to the feed and starts writing. The request must already be asynchronous.
+     */
+    void start() {
+        feed.subscribe(this);
+        out.setWriteListener(this);
+    }
+
+    /**
+     * @return completes when the connection has been closed, by either side
+     */
+    CompletableFuture<Void> closed() {
+        return closed;
+    }
+
+    void close() {
+        feed.unsubscribe(this);
+        closed.complete(null);
+    }
+
+    @Override
+    protected void framesPending() {
+        if (writing.tryLock()) {
+            write();
+        }
+    }
+
+    @Override
+    protected void overflowed() {
+        close();
+    }
+
+    /**
+     * Waits for the lock, unlike framesPending: whoever holds it may already have given up on an output that was
+     * not ready, and this call is the only one that will come.
+     */
+    @Override
+    public void onWritePossible() {
+        writing.lock();
+        write();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        close();
+    }
+
+    /**
+     * Writes with the lock held, and releases it.
+     */
+    private void write() {
+        while (true) {
+            boolean drained = false;
+            try {
+                drained = !closed.isDone() && writePending();
+            } catch (IOException | IllegalStateException e) {
+                close();
+            } finally {
+                writing.unlock();
+            }
+            // the feed thread leaves frames it adds while the lock is held to the holder
+            if (!drained || !hasPending() || !writing.tryLock()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if everything pending was written, false if the output is not ready for more and
+     *         onWritePossible will be called when it is
+     */
+    private boolean writePending() throws IOException {
+        while (out.isReady()) {
+            byte[] frame = poll();
+            if (frame != null) {
+                out.write(frame);
+                flushNeeded = true;
+            } else if (flushNeeded) {
+                flushNeeded = false;
+                out.flush();
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,19 +1,52 @@
 package Controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
 
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import Model.Account;
 import Model.Message;
 import Service.AccountService;
+import Service.AsyncAccountService;
+import Service.AsyncMessageService;
 import Service.MessageService;
 import Service.UnauthorizedException;
+import Util.AdmissionController;
+import Util.ConnectionUtil;
+import Util.JsonSupport;
+import Util.RateLimiter;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
 import io.javalin.http.HttpResponseException;
+import io.javalin.http.ServiceUnavailableResponse;
+import io.javalin.json.JavalinJackson;
 
 
 /**
@@ -22,6 +55,8 @@ import io.javalin.http.HttpResponseException;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocialMediaController.class);
+
     /**
      * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
      * suite must receive a Javalin object from this method.
@@ -29,19 +64,80 @@ public class SocialMediaController {
      */
     private AccountService accountService;
     private MessageService messageService;
+    private AsyncAccountService asyncAccountService;
+    private AsyncMessageService asyncMessageService;
+
+    /**
+     * Part of every list ETag, so tags handed out before a restart (when versions start over) never match.
+     */
+    private final String instanceTag = Long.toHexString(System.nanoTime());
+
+    /**
+     * Admission control for GET requests and for everything else, limited separately because writes hold row
+     * locks and commit to disk while reads are mostly served from cache. Each is tuned with the system properties
+     * http.admission.read.* and http.admission.write.* (see AdmissionController.fromProperties).
+     */
+    private final AdmissionController readAdmission = AdmissionController.fromProperties("http.admission.read",
+            100, 10, 1000, 200, 1000);
+    private final AdmissionController writeAdmission = AdmissionController.fromProperties("http.admission.write",
+            20, 4, 200, 100, 1000);
+
+    /**
+     * Per-account limit on creating, updating and deleting messages, keyed by posted_by: ratelimit.write.perSecond
+     * (default 10; 0 disables it) with bursts of ratelimit.write.burst (default 20). Buckets of accounts idle for
+     * ratelimit.write.idleMillis (default 60000) are dropped, and at most ratelimit.write.maxAccounts (default
+     * 100000) are kept. A token is only taken once the account is known to exist.
+     */
+    private final RateLimiter writeRateLimiter = new RateLimiter(
+            Double.parseDouble(System.getProperty("ratelimit.write.perSecond", "10")),
+            Integer.getInteger("ratelimit.write.burst", 20),
+            Long.getLong("ratelimit.write.idleMillis", 60000L),
+            Integer.getInteger("ratelimit.write.maxAccounts", 100000));
+
+    /**
+     * Bounds the streaming exports (GET /messages?stream=...) running at once to http.export.maxConcurrent
+     * (default 2), as each holds a pooled connection while its client reads.
+     */
+    private final Semaphore exports = new Semaphore(Integer.getInteger("http.export.maxConcurrent", 2));
+
+    private static final String ADMITTED_ATTRIBUTE = "admission.admittedAt";
+    private static final String FEED_PATH = "/messages/feed";
 
     public SocialMediaController(){
+        this(ConnectionUtil.getExecutor());
+    }
+
+    /**
+     * @param databaseExecutor runs the service calls of every handler; the request thread is released while they
+     *        run unless it executes them directly (the default with platform request threads, see
+     *        ConnectionUtil.getExecutor())
+     */
+    public SocialMediaController(Executor databaseExecutor){
         this.accountService=new AccountService();
         this.messageService = new MessageService();
+        this.asyncAccountService = new AsyncAccountService(accountService, databaseExecutor);
+        this.asyncMessageService = new AsyncMessageService(messageService, databaseExecutor);
     }
 
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(new JavalinJackson(JsonSupport.MAPPER));
+            // Jetty's GzipHandler replaces Javalin's compression, which allocates a new Deflater per response
+            config.compression.none();
+            config.jetty.contextHandlerConfig(handler -> handler.insertHandler(createGzipHandler()));
+            config.jetty.server(SocialMediaController::createServer);
+        });
+        app.events(event -> event.serverStopped(messageService::close));
+        app.before(this::admit);
+        app.after(this::releaseAdmission);
         app.get("example-endpoint", this::exampleHandler);
         app.post("/register", this::registerAccount);
         app.post("/login", this::loginAccount);
         app.post("/messages", this::createMessage);
+        app.post("/messages/batch", this::createMessageBatch);
         app.get("/messages", this::getAllMessages);
+        app.get(FEED_PATH, this::getMessageFeed);
+        app.get("/messages/changes", this::getMessageChanges);
         app.get("/messages/{message_id}", this::getMessageById);
         app.delete("/messages/{message_id}", this::deleteMessageById);
         app.patch("/messages/{message_id}", this::updateMessageById);
@@ -53,6 +149,88 @@ public class SocialMediaController {
         return app;
     }
 
+    /**
+     * Admits the request under the read or write limit, or rejects it with 503 Service Unavailable and a
+     * Retry-After header (http.admission.retryAfterSeconds, default 1) without running its handler. The message
+     * feed is not limited: a subscriber holds no thread, but would hold its slot for as long as it is connected.
+     * Nor are streaming exports, which have their own bound (http.export.maxConcurrent): they would hold a read
+     * slot for the whole export, and their latency, which follows the table size and the client's speed, would
+     * drive the adaptive read limit down.
+     */
+    private void admit(Context ctx) throws InterruptedException {
+        if (ctx.path().equals(FEED_PATH) || isExport(ctx)) {
+            return;
+        }
+        if (!admission(ctx).tryAcquire()) {
+            ctx.header(Header.RETRY_AFTER, Integer.toString(Integer.getInteger("http.admission.retryAfterSeconds", 1)));
+            throw new ServiceUnavailableResponse();
+        }
+        ctx.attribute(ADMITTED_ATTRIBUTE, System.nanoTime());
+    }
+
+    /**
+     * Runs after the handler, and after its future has completed, for admitted and rejected requests alike.
+     */
+    private void releaseAdmission(Context ctx) {
+        Long admittedAt = ctx.attribute(ADMITTED_ATTRIBUTE);
+        if (admittedAt != null) {
+            admission(ctx).release(System.nanoTime() - admittedAt);
+        }
+    }
+
+    private AdmissionController admission(Context ctx) {
+        return ctx.method() == HandlerType.GET || ctx.method() == HandlerType.HEAD ? readAdmission : writeAdmission;
+    }
+
+    public AdmissionController getReadAdmission() {
+        return readAdmission;
+    }
+
+    public AdmissionController getWriteAdmission() {
+        return writeAdmission;
+    }
+
+    /**
+     * A Jetty server on a QueuedThreadPool of http.maxThreads platform threads (default 250, as in Javalin's own
+     * server). With -Dhttp.virtualThreads=true every request is instead handled on a new virtual thread; Jetty's
+     * selector and acceptor threads stay on the platform pool. Virtual threads need Java 21 (or 19/20 with
+     * --enable-preview); on older runtimes Jetty logs a warning and keeps handling requests on the platform pool.
+     *
+     * JDBC is not virtual-thread friendly: h2 holds a monitor on its session for every call, which pins the
+     * carrier of a virtual thread for the whole query. In this mode the database executor therefore defaults to
+     * platform threads (see ConnectionUtil), and request threads only wait for its futures, which unmounts them.
+     * Streaming exports still query on the request thread and pin a carrier each while they run; there are at
+     * most http.export.maxConcurrent of them, which should stay below the number of carriers.
+     *
+     * Supplying the server also keeps Javalin from switching to virtual threads by itself on runtimes that have
+     * them, so the execution mode is always the configured one.
+     */
+    private static Server createServer() {
+        QueuedThreadPool threadPool = new QueuedThreadPool(Integer.getInteger("http.maxThreads", 250),
+                Integer.getInteger("http.minThreads", 8), 60000);
+        threadPool.setName("JettyServerThreadPool");
+        if (Boolean.getBoolean("http.virtualThreads")) {
+            threadPool.setUseVirtualThreads(true);
+            LOGGER.info("Virtual thread request execution {}",
+                    threadPool.isUseVirtualThreads() ? "enabled" : "is not supported by this runtime");
+        }
+        return new Server(threadPool);
+    }
+
+    /**
+     * Gzip for responses of at least http.compression.minSize bytes (default 1024) when the client accepts it, so
+     * single messages go out uncompressed while large lists shrink. Deflaters come from a pool and are reset and
+     * reused across responses instead of allocating native zlib state for each one.
+     */
+    private static GzipHandler createGzipHandler() {
+        GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setMinGzipSize(Integer.getInteger("http.compression.minSize", 1024));
+        gzipHandler.setIncludedMimeTypes("application/json", "application/x-ndjson", JsonSupport.CBOR_CONTENT_TYPE);
+        gzipHandler.setDeflaterPool(new DeflaterPool(Integer.getInteger("http.compression.deflaterPoolSize", 64),
+                Integer.getInteger("http.compression.level", Deflater.DEFAULT_COMPRESSION), true));
+        return gzipHandler;
+    }
+
     /**
      * This is an example handler for an example endpoint.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
@@ -61,24 +239,206 @@ public class SocialMediaController {
         context.json("sample text");
     }
 
+    /**
+     * @return true if the request body is CBOR rather than JSON
+     */
+    private boolean sendsCbor(Context ctx) {
+        String contentType = ctx.contentType();
+        return contentType != null && contentType.startsWith(JsonSupport.CBOR_CONTENT_TYPE);
+    }
+
+    /**
+     * @return true if the Accept header gives CBOR a higher q-value than JSON, or the same non-zero one and lists
+     *         it first; each type's q-value comes from its most specific matching range, as in RFC 9110
+     */
+    private boolean acceptsCbor(Context ctx) {
+        String accept = ctx.header(Header.ACCEPT);
+        if (accept == null) {
+            return false;
+        }
+        String[] mediaRanges = accept.split(",");
+        double[] cbor = quality(mediaRanges, JsonSupport.CBOR_CONTENT_TYPE);
+        double[] json = quality(mediaRanges, "application/json");
+        return cbor[0] > 0 && (cbor[0] > json[0] || cbor[0] == json[0] && cbor[1] < json[1]);
+    }
+
+    /**
+     * @return the q-value of the most specific range in mediaRanges matching mediaType (0 if none does), and that
+     *         range's position
+     */
+    private static double[] quality(String[] mediaRanges, String mediaType) {
+        String anySubtype = mediaType.substring(0, mediaType.indexOf('/')) + "/*";
+        int bestSpecificity = -1;
+        double[] quality = { 0, mediaRanges.length };
+        for (int i = 0; i < mediaRanges.length; i++) {
+            String[] parameters = mediaRanges[i].split(";");
+            String range = parameters[0].trim().toLowerCase();
+            int specificity = range.equals(mediaType) ? 2 : range.equals(anySubtype) ? 1 : range.equals("*/*") ? 0 : -1;
+            if (specificity > bestSpecificity) {
+                bestSpecificity = specificity;
+                quality[0] = qValue(parameters);
+                quality[1] = i;
+            }
+        }
+        return quality;
+    }
+
+    /**
+     * @return the q parameter among the parameters of a media range, 1 if it has none and 0 if it is malformed
+     */
+    private static double qValue(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Reads the request body as JSON or CBOR according to its Content-Type, straight from the input stream.
+     */
+    private <T> T readBody(Context ctx, ObjectReader jsonReader, ObjectReader cborReader) throws IOException {
+        return (sendsCbor(ctx) ? cborReader : jsonReader).readValue(ctx.bodyInputStream());
+    }
+
+    /**
+     * Writes the value as JSON or CBOR according to the Accept header, with pre-built writers straight to bytes,
+     * skipping Javalin's intermediate String.
+     */
+    private void respond(Context ctx, ObjectWriter jsonWriter, ObjectWriter cborWriter, Object value)
+            throws JsonProcessingException {
+        ctx.header(Header.VARY, Header.ACCEPT);
+        if (acceptsCbor(ctx)) {
+            ctx.contentType(JsonSupport.CBOR_CONTENT_TYPE).result(cborWriter.writeValueAsBytes(value));
+        } else {
+            ctx.contentType(ContentType.APPLICATION_JSON).result(jsonWriter.writeValueAsBytes(value));
+        }
+    }
+
+    /**
+     * Writes a message, as JSON from its cached encoding unless CBOR was asked for.
+     */
+    private void respond(Context ctx, Message message) throws JsonProcessingException {
+        if (acceptsCbor(ctx)) {
+            respond(ctx, JsonSupport.MESSAGE_WRITER, JsonSupport.CBOR_MESSAGE_WRITER, message);
+            return;
+        }
+        ctx.header(Header.VARY, Header.ACCEPT);
+        ctx.contentType(ContentType.APPLICATION_JSON).result(messageService.getMessageJson().toJson(message));
+    }
+
+    /**
+     * Writes a list of messages, as JSON spliced together from their cached encodings unless CBOR was asked for.
+     */
+    private void respond(Context ctx, List<Message> messages) throws JsonProcessingException {
+        if (acceptsCbor(ctx)) {
+            respond(ctx, JsonSupport.MESSAGE_LIST_WRITER, JsonSupport.CBOR_MESSAGE_LIST_WRITER, messages);
+            return;
+        }
+        ctx.header(Header.VARY, Header.ACCEPT);
+        ctx.contentType(ContentType.APPLICATION_JSON).result(messageService.getMessageJson().toJson(messages));
+    }
+
+    @FunctionalInterface
+    private interface ResponseWriter<T> {
+        void write(T value) throws IOException;
+    }
+
+    /**
+     * Hands the service call to Javalin as a future, so the request thread is released until it completes, then
+     * writes the response with the writer. A call failing with UnauthorizedException answers errorStatus, a full
+     * database executor answers 503 and an exceeded rate limit 429; any other failure goes to Javalin's exception
+     * handling.
+     */
+    private <T> void reply(Context ctx, Supplier<CompletableFuture<T>> call, ResponseWriter<T> writer,
+            int errorStatus) {
+        ctx.future(() -> call.get().handle((value, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            try {
+                if (cause == null) {
+                    writer.write(value);
+                } else if (cause instanceof UnauthorizedException) {
+                    ctx.status(errorStatus);
+                } else if (cause instanceof RejectedExecutionException) {
+                    ctx.status(503);
+                } else if (cause instanceof RateLimiter.LimitExceededException) {
+                    tooManyRequests(ctx, (RateLimiter.LimitExceededException) cause);
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new CompletionException(cause);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }));
+    }
+
+
+    /**
+     * Takes a write token for the account that posted the message.
+     * @throws RateLimiter.LimitExceededException if the account has none left
+     */
+    private void checkWriteRate(int postedBy) {
+        long retryAfterNanos = writeRateLimiter.tryAcquire(postedBy);
+        if (retryAfterNanos > 0) {
+            throw new RateLimiter.LimitExceededException(retryAfterNanos);
+        }
+    }
+
+    /**
+     * Takes one write token per message from each existing posting account, all or none, but never more than a
+     * full bucket from any one account: a batch larger than the burst costs the whole burst, so it is admitted
+     * once the account's bucket is full rather than never.
+     * @throws RateLimiter.LimitExceededException if any of the accounts has too few left
+     */
+    private void checkBatchWriteRate(List<Message> messages, Map<Integer, Account> accounts) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (Message message : messages) {
+            if (message != null && accounts.containsKey(message.getPosted_by())) {
+                counts.merge(message.getPosted_by(), 1, Integer::sum);
+            }
+        }
+        Map<Integer, Integer> taken = new HashMap<>();
+        for (Map.Entry<Integer, Integer> count : counts.entrySet()) {
+            int charge = Math.min(count.getValue(), writeRateLimiter.getBurst());
+            long retryAfterNanos = writeRateLimiter.tryAcquire(count.getKey(), charge);
+            if (retryAfterNanos > 0) {
+                taken.forEach(writeRateLimiter::release);
+                throw new RateLimiter.LimitExceededException(retryAfterNanos);
+            }
+            taken.put(count.getKey(), charge);
+        }
+    }
+
+    private void tooManyRequests(Context ctx, RateLimiter.LimitExceededException e) {
+        ctx.header(Header.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()));
+        ctx.status(429);
+    }
+
+    public RateLimiter getWriteRateLimiter() {
+        return writeRateLimiter;
+    }
 
     /**
      * This method handles the registration process for new users.
      * It expects a POST request to "/register" with the new account details in the
      * request body.
      */
-    private void registerAccount(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        try {
-            Account registeredAccount = accountService.createAccount(account);
-
-            // Send the registered account as a JSON response
-            ctx.json(mapper.writeValueAsString(registeredAccount));
-        } catch (UnauthorizedException e) {
-            // Set the response status to 400 (Bad Request) in case of exception
-            ctx.status(400);
-        }
+    private void registerAccount(Context ctx) throws IOException {
+        Account account = readBody(ctx, JsonSupport.ACCOUNT_READER, JsonSupport.CBOR_ACCOUNT_READER);
+        // Send the registered account as a JSON response, or 400 (Bad Request) if it was rejected
+        reply(ctx, () -> asyncAccountService.createAccount(account),
+                registeredAccount -> respond(ctx, JsonSupport.ACCOUNT_WRITER, JsonSupport.CBOR_ACCOUNT_WRITER,
+                        registeredAccount),
+                400);
     }
 
     /**
@@ -86,156 +446,403 @@ public class SocialMediaController {
      * It expects a POST request to "/login" with the account credentials in the
      * request body.
      */
-    private void loginAccount(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper(); // it calls a default no-arg constructor from Model.Account - REQUIRED
-                                                  // for Jackson ObjectMapper
-        Account account = mapper.readValue(ctx.body(), Account.class);
+    private void loginAccount(Context ctx) throws IOException {
+        // it calls a default no-arg constructor from Model.Account - REQUIRED for Jackson
+        Account account = readBody(ctx, JsonSupport.ACCOUNT_READER, JsonSupport.CBOR_ACCOUNT_READER);
 
-        try {
-            Optional<Account> loggedInAccount = accountService
-                    .validateLogin(account);
+        reply(ctx, () -> asyncAccountService.validateLogin(account), loggedInAccount -> {
             if (loggedInAccount.isPresent()) {
-               
-                ctx.json(mapper.writeValueAsString(loggedInAccount));
+
                 ctx.sessionAttribute("logged_in_account",
                         loggedInAccount.get());
-                ctx.json(loggedInAccount.get());
+                respond(ctx, JsonSupport.ACCOUNT_WRITER, JsonSupport.CBOR_ACCOUNT_WRITER, loggedInAccount.get());
             } else {
-                
+
                 ctx.status(401);
             }
-        } catch (UnauthorizedException e) {
-            
-            ctx.status(401);
-        }
+        }, 401);
     }
 
     /**
      * This method handles the creation of new messages.
      * It expects a POST request to "/messages" with the message details in the
      * request body.
+     * An account over its write rate gets 429 Too Many Requests with a Retry-After header.
      */
-    private void createMessage(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message mappedMessage = mapper.readValue(ctx.body(), Message.class);
+    private void createMessage(Context ctx) throws IOException {
+        Message mappedMessage = readBody(ctx, JsonSupport.MESSAGE_READER, JsonSupport.CBOR_MESSAGE_READER);
+        reply(ctx, () -> asyncAccountService.getAccountById(mappedMessage.getPosted_by())
+                .thenCompose(account -> {
+                    account.ifPresent(found -> checkWriteRate(found.getAccount_id()));
+                    return asyncMessageService.createMessage(mappedMessage, account);
+                }),
+                message -> respond(ctx, message), 400);
+    }
+
+    /**
+     * This method handles the creation of several messages at once.
+     * It expects a POST request to "/messages/batch" with an array of messages in the request body. The posting
+     * accounts are looked up together and the valid messages are inserted in one transaction. The response lists,
+     * for each message in request order, its status (200 or 400) and either the created message or the error.
+     * A body that is not an array, or an array longer than MessageService.MAX_BATCH_SIZE, gets 400. Each message
+     * costs its account one write token, up to ratelimit.write.burst per account; if any account has too few left,
+     * the whole batch gets 429 Too Many Requests and no tokens are spent.
+     */
+    private void createMessageBatch(Context ctx) throws IOException {
+        List<Message> messages;
         try {
-            Optional<Account> account = accountService
-                    .getAccountById(mappedMessage.getPosted_by());
-            Message message = messageService.createMessage(mappedMessage,
-                    account);
-            ctx.json(message);
-        } catch (UnauthorizedException e) {
-            
+            messages = readBody(ctx, JsonSupport.MESSAGE_LIST_READER, JsonSupport.CBOR_MESSAGE_LIST_READER);
+        } catch (JsonProcessingException e) {
             ctx.status(400);
+            return;
         }
+        // reject an oversized batch before looking up its accounts
+        if (messages == null || messages.size() > MessageService.MAX_BATCH_SIZE) {
+            ctx.status(400);
+            return;
+        }
+        Set<Integer> accountIds = new HashSet<>();
+        for (Message message : messages) {
+            if (message != null) {
+                accountIds.add(message.getPosted_by());
+            }
+        }
+        reply(ctx, () -> asyncAccountService.getAccountsByIds(accountIds)
+                .thenCompose(accounts -> {
+                    checkBatchWriteRate(messages, accounts);
+                    return asyncMessageService.createMessages(messages, accounts);
+                }),
+                results -> respond(ctx, JsonSupport.MESSAGE_BATCH_RESULT_WRITER,
+                        JsonSupport.CBOR_MESSAGE_BATCH_RESULT_WRITER, results),
+                400);
     }
 
     /**
      * This method retrieves all messages.
-     * It expects a GET request to "/messages".
+     * It expects a GET request to "/messages". When a "limit" or "cursor" query parameter is given, a single page
+     * is returned instead, together with the cursor for the next one. With "stream=json" or "stream=ndjson" every
+     * message is written to the response as it is read from the database, as a JSON array or as one JSON object
+     * per line. With "ids=1,2,3" only those messages are returned, in the order requested, together with the
+     * requested ids that have no message. Streaming runs on the request thread, which it holds for the length of
+     * the export anyway; everything else is read on the database executor. Beyond http.export.maxConcurrent
+     * exports at once, a stream is answered with 503 Service Unavailable and a Retry-After header.
      */
-    private void getAllMessages(Context ctx) {
+    private void getAllMessages(Context ctx) throws IOException {
 
-        List<Message> messages = messageService.getAllMessages();
-        ctx.json(messages);
+        if (ctx.queryParam("ids") != null) {
+            List<Integer> ids;
+            try {
+                ids = idsParam(ctx);
+            } catch (NumberFormatException e) {
+                ctx.status(400);
+                return;
+            }
+            reply(ctx, () -> asyncMessageService.getMessagesByIds(ids),
+                    result -> respond(ctx, JsonSupport.MESSAGE_MULTI_GET_WRITER,
+                            JsonSupport.CBOR_MESSAGE_MULTI_GET_WRITER, result),
+                    400);
+            return;
+        }
+        if (isExport(ctx)) {
+            streamAllMessages(ctx, "ndjson".equals(ctx.queryParam("stream")));
+            return;
+        }
+        if (isPageRequest(ctx)) {
+            int limit;
+            try {
+                limit = pageLimit(ctx);
+            } catch (NumberFormatException e) {
+                ctx.status(400);
+                return;
+            }
+            reply(ctx, () -> asyncMessageService.getMessagesPage(ctx.queryParam("cursor"), limit),
+                    page -> respond(ctx, JsonSupport.MESSAGE_PAGE_WRITER, JsonSupport.CBOR_MESSAGE_PAGE_WRITER, page),
+                    400);
+            return;
+        }
+        reply(ctx, asyncMessageService::getAllMessages, messages -> respond(ctx, messages), 500);
     }
 
     /**
-     * This method handles the retrieval of a specific message by its ID.
-     * It expects a GET request to "/messages/{message_id}".
+     * @return true for a streaming export, GET /messages with "stream=json" or "stream=ndjson" (and no "ids")
      */
+    private static boolean isExport(Context ctx) {
+        String stream = ctx.queryParam("stream");
+        return ctx.path().equals("/messages") && ctx.method() == HandlerType.GET && ctx.queryParam("ids") == null
+                && ("json".equals(stream) || "ndjson".equals(stream));
+    }
 
-    private void getMessageById(Context ctx) {
+    private void streamAllMessages(Context ctx, boolean ndjson) throws IOException {
+
+        if (!exports.tryAcquire()) {
+            ctx.header(Header.RETRY_AFTER, Integer.toString(Integer.getInteger("http.admission.retryAfterSeconds", 1)));
+            throw new ServiceUnavailableResponse();
+        }
         try {
-            int id = Integer.parseInt(ctx.pathParam("message_id"));
-            Optional<Message> message = messageService.getMessageById(id);
-            if (message.isPresent()) {
-                ctx.json(message.get());
-            } else {
-                
-                ctx.status(200); 
-                ctx.result(""); 
+            writeAllMessages(ctx, ndjson);
+        } finally {
+            exports.release();
+        }
+    }
+
+    private void writeAllMessages(Context ctx, boolean ndjson) throws IOException {
+
+        ctx.contentType(ndjson ? "application/x-ndjson" : "application/json");
+        try (JsonGenerator generator = JsonSupport.MAPPER.getFactory().createGenerator(ctx.outputStream())) {
+            generator.setRootValueSeparator(null);
+            if (!ndjson) {
+                generator.writeStartArray();
             }
-            
-        } catch (NumberFormatException e) {
-            ctx.status(400); 
-        } catch (UnauthorizedException e) {
-            ctx.status(200); 
-            ctx.result("");
+            messageService.streamAllMessages(message -> {
+                try {
+                    JsonSupport.MESSAGE_WRITER.writeValue(generator, message);
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        } catch (UncheckedIOException e) {
+            // the client went away mid-stream; the status line has already been sent
+            throw e.getCause();
         }
     }
 
     /**
-     * This method handles the deletion of a specific message by its ID.
-     * It expects a DELETE request to "/messages/{message_id}".
+     * This method streams messages as they are created, updated and deleted.
+     * It expects a GET request to "/messages/feed", optionally with a "posted_by" query parameter to receive only
+     * the messages of that account, and answers with a text/event-stream of "created", "updated" and "deleted"
+     * events whose data is the message. The response stays open, written without blocking (see FeedConnection)
+     * and holding no thread while idle; a client that falls behind by more than feed.bufferSize events is
+     * disconnected and should reconnect and read again what it needs.
      */
-    private void deleteMessageById(Context ctx) {
+    private void getMessageFeed(Context ctx) throws IOException {
+        Integer postedBy = null;
+        String postedByParam = ctx.queryParam("posted_by");
+        if (postedByParam != null) {
+            try {
+                postedBy = Integer.parseInt(postedByParam);
+            } catch (NumberFormatException e) {
+                ctx.status(400);
+                return;
+            }
+        }
+        ctx.contentType("text/event-stream");
+        ctx.header(Header.CACHE_CONTROL, "no-cache");
+        // started here rather than by ctx.future, which would start it only after the output must be set up
+        ctx.req().startAsync().setTimeout(0);
+        FeedConnection connection = new FeedConnection(messageService.getFeed(), postedBy,
+                ctx.res().getOutputStream());
+        ctx.future(connection::closed);
+        connection.start();
+    }
+
+    /**
+     * This method lists what changed since the client's last sync.
+     * It expects a GET request to "/messages/changes" with the next_since of the previous answer as the "since"
+     * query parameter (0, the default, for a first sync) and an optional "limit". The answer holds the messages
+     * created, edited or deleted after it in change order, the cursor for the next sync, and whether more changes
+     * are waiting. A cursor older than the tombstone retention window gets 410 Gone, and the client should sync
+     * again from 0.
+     */
+    private void getMessageChanges(Context ctx) {
+        long since;
+        int limit;
         try {
-           
-            int id = Integer.parseInt(ctx.pathParam("message_id"));
+            String sinceParam = ctx.queryParam("since");
+            since = sinceParam == null ? 0 : Long.parseLong(sinceParam);
+            limit = pageLimit(ctx);
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        reply(ctx, () -> asyncMessageService.getChangesSince(since, limit),
+                changes -> respond(ctx, JsonSupport.CHANGE_SET_WRITER, JsonSupport.CBOR_CHANGE_SET_WRITER, changes),
+                400);
+    }
+
+    /**
+     * @return the ids of every "ids" query parameter, each a comma-separated list, in order
+     */
+    private List<Integer> idsParam(Context ctx) {
+        List<Integer> ids = new ArrayList<>();
+        for (String param : ctx.queryParams("ids")) {
+            for (String id : param.split(",")) {
+                if (!id.isBlank()) {
+                    ids.add(Integer.parseInt(id.trim()));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private boolean isPageRequest(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("cursor") != null;
+    }
+
+    private int pageLimit(Context ctx) {
+        String limit = ctx.queryParam("limit");
+        return limit == null ? MessageService.DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+    }
+
+    /**
+     * @return true if the request's If-None-Match header lists the given entity tag
+     */
+    private boolean notModified(Context ctx, String etag) {
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 64-bit FNV-1a over the encoded body, so the tag changes whenever any field of the message does.
+     */
+    private static String contentTag(byte[] body) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : body) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * This method handles the retrieval of a specific message by its ID.
+     * It expects a GET request to "/messages/{message_id}". The response carries a strong ETag derived from the
+     * message id and content; a request whose If-None-Match matches it gets 304 Not Modified without a body.
+     */
 
-            // Attempt to retrieve the message by its ID
-            Optional<Message> message = messageService.getMessageById(id);
+    private void getMessageById(Context ctx) {
+        int id;
+        try {
+            id = Integer.parseInt(ctx.pathParam("message_id"));
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        reply(ctx, () -> asyncMessageService.getMessageById(id), message -> {
             if (message.isPresent()) {
-              
-                messageService.deleteMessage(message.get());
-                ctx.status(200);
-               
-                ctx.json(message.get());
+                boolean cbor = acceptsCbor(ctx);
+                byte[] json = messageService.getMessageJson().toJson(message.get());
+                // each representation needs its own strong tag
+                String etag = "\"m" + id + "-" + contentTag(json) + (cbor ? "-cbor" : "") + "\"";
+                ctx.header(Header.ETAG, etag);
+                ctx.header(Header.VARY, Header.ACCEPT);
+                if (notModified(ctx, etag)) {
+                    ctx.status(304);
+                    return;
+                }
+                if (cbor) {
+                    ctx.contentType(JsonSupport.CBOR_CONTENT_TYPE)
+                            .result(JsonSupport.CBOR_MESSAGE_WRITER.writeValueAsBytes(message.get()));
+                } else {
+                    ctx.contentType(ContentType.APPLICATION_JSON).result(json);
+                }
             } else {
-               
+
                 ctx.status(200);
+                ctx.result("");
             }
-        } catch (UnauthorizedException e) {
-            
-            ctx.status(200);
-        }
+        }, 200);
+    }
+
+    /**
+     * This method handles the deletion of a specific message by its ID.
+     * It expects a DELETE request to "/messages/{message_id}" and answers with the deleted message, or an empty
+     * body if there was none. The author is looked up first (through the message cache, posted_by never
+     * changes) so the write rate is checked before the delete runs; then the message is deleted and read back
+     * with one statement.
+     * An account over its write rate gets 429 Too Many Requests with a Retry-After header.
+     */
+    private void deleteMessageById(Context ctx) {
+
+        int id = Integer.parseInt(ctx.pathParam("message_id"));
+
+        reply(ctx, () -> asyncMessageService.getMessageById(id)
+                        .thenCompose(message -> {
+                            checkWriteRate(message.get().getPosted_by());
+                            return asyncMessageService.deleteMessageById(id);
+                        }),
+                message -> {
+                    ctx.status(200);
+                    if (message.isPresent()) {
+                        respond(ctx, JsonSupport.MESSAGE_WRITER, JsonSupport.CBOR_MESSAGE_WRITER, message.get());
+                    }
+                }, 200);
     }
 
     /**
      * This method handles the update of a specific message by its ID.
      * It expects a PATCH request to "/messages/{message_id}" with the new content
-     * of the message in the request body.
+     * of the message in the request body. Only message_text is changed. The author is looked up first (through
+     * the message cache) so the write rate is checked before the update runs; then the message is updated and
+     * read back with one statement.
+     * An account over its write rate gets 429 Too Many Requests with a Retry-After header.
      */
-    private void updateMessageById(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message mappedMessage = mapper.readValue(ctx.body(), Message.class);
-        try {
-            int id = Integer.parseInt(ctx.pathParam("message_id"));
-            mappedMessage.setMessage_id(id);
-            Message messageUpdated = messageService
-                    .updateMessage(mappedMessage);
-           
-            ctx.json(messageUpdated);
-
-        } catch (UnauthorizedException e) {
-            
-            ctx.status(400);
-        }
+    private void updateMessageById(Context ctx) throws IOException {
+        Message mappedMessage = readBody(ctx, JsonSupport.MESSAGE_READER, JsonSupport.CBOR_MESSAGE_READER);
+        int id = Integer.parseInt(ctx.pathParam("message_id"));
+        reply(ctx, () -> asyncMessageService.getMessageById(id)
+                        .thenCompose(message -> {
+                            checkWriteRate(message.get().getPosted_by());
+                            return asyncMessageService.updateMessageText(id, mappedMessage.getMessage_text());
+                        }),
+                messageUpdated -> respond(ctx, messageUpdated), 400);
     }
 
     /**
      * This method retrieves all messages associated with a specific account ID.
-     * It expects a GET request to "/accounts/{account_id}/messages".
+     * It expects a GET request to "/accounts/{account_id}/messages". As with "/messages", a "limit" or "cursor"
+     * query parameter selects a single page ordered by time_posted_epoch.
+     * The full list carries an ETag built from the account's message version, so a matching If-None-Match is
+     * answered with 304 Not Modified before the messages are read at all.
      */
     private void getMessagesByAccountId(Context ctx) {
+        int accountId;
+        int limit;
         try {
-            int accountId = Integer.parseInt(ctx.pathParam("account_id"));
+            accountId = Integer.parseInt(ctx.pathParam("account_id"));
+            limit = pageLimit(ctx);
+        } catch (NumberFormatException e) {
 
-            List<Message> messages = messageService
-                    .getMessagesByAccountId(accountId);
-            if (!messages.isEmpty()) {
-               
-                ctx.json(messages);
-            } else {
-                
-                ctx.json(messages);
-                ctx.status(200);
-            }
-        } catch (UnauthorizedException e) {
-            
             ctx.status(400);
+            return;
+        }
+        if (isPageRequest(ctx)) {
+            reply(ctx, () -> asyncMessageService.getMessagesPageByAccountId(accountId, ctx.queryParam("cursor"),
+                    limit),
+                    page -> respond(ctx, JsonSupport.MESSAGE_PAGE_WRITER, JsonSupport.CBOR_MESSAGE_PAGE_WRITER, page),
+                    400);
+            return;
+        }
+
+        // read the version before the messages, so a write in between can only make the tag older; the query is
+        // only shared with requests that saw the same version, so it cannot have started before that version's write
+        long version = messageService.getAccountMessagesVersion(accountId);
+        String etag = "\"a" + accountId + "-" + instanceTag + "-" + version + (acceptsCbor(ctx) ? "-cbor" : "") + "\"";
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.VARY, Header.ACCEPT);
+        if (notModified(ctx, etag)) {
+            ctx.status(304);
+            return;
         }
+        reply(ctx, () -> asyncMessageService.getMessagesByAccountId(accountId, version),
+                messages -> respond(ctx, messages), 400);
     }
 
-}
\ No newline at end of file
+}
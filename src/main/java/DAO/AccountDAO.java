@@ -6,6 +6,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -21,6 +22,15 @@ public class AccountDAO implements SuperDAO<Account> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AccountDAO.class);
 
+    private int batchSize = BatchSupport.DEFAULT_BATCH_SIZE;
+
+    /**
+     * @throws IllegalArgumentException if batchSize is less than 1
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = BatchSupport.checkBatchSize(batchSize);
+    }
+
     /**
      * @param e
      * @param sql
@@ -43,8 +53,8 @@ public class AccountDAO implements SuperDAO<Account> {
         // TODO Auto-generated method stub
         String sql="Select * from account where account_id=?";
         
-        Connection connection=ConnectionUtil.getConnection();
-        try(PreparedStatement ps=connection.prepareStatement(sql)){
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps=connection.prepareStatement(sql)){
             ps.setInt(1, id);
             try(ResultSet rs=ps.executeQuery()){
                 if(rs.next()){
@@ -69,8 +79,8 @@ public class AccountDAO implements SuperDAO<Account> {
         
         List<Account> accounts=new ArrayList<>();
         String sql="Select * from account";
-        Connection conn=ConnectionUtil.getConnection();
-        try(PreparedStatement ps=conn.prepareStatement(sql)){
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps=conn.prepareStatement(sql)){
             try(ResultSet rs=ps.executeQuery()){
             while(rs.next()){
                 Account account=new Account(
@@ -89,10 +99,39 @@ public class AccountDAO implements SuperDAO<Account> {
 
     }
 
+    /**
+     * Binds the ids as a single array parameter, so the statement text (and its cached plan) is the same for any
+     * number of ids.
+     */
+    @Override
+    public List<Account> getByIds(Collection<Integer> ids) {
+
+        List<Account> accounts = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return accounts;
+        }
+        String sql = "Select * from account where account_id = ANY(?)";
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setObject(1, ids.toArray(new Integer[0]));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    accounts.add(new Account(
+                        rs.getInt("account_id"),
+                        rs.getString("username"),
+                        rs.getString("password")));
+                }
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while getting accounts with ids: " + ids);
+        }
+        return accounts;
+    }
+
     public Optional<Account> findAccountByUsername(String username){
         String sql="Select * from account where username=?";
-        Connection conn=ConnectionUtil.getConnection();
-        try(PreparedStatement ps=conn.prepareStatement(sql)){
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps=conn.prepareStatement(sql)){
             ps.setString(1, username);
             try(ResultSet rs=ps.executeQuery()){
                 if(rs.next()){
@@ -111,8 +150,8 @@ public class AccountDAO implements SuperDAO<Account> {
     }
     public Optional<Account> validateLogin(String username, String password){
         String sql="Select * from account where username=?";
-        Connection conn=ConnectionUtil.getConnection();
-        try(PreparedStatement ps=conn.prepareStatement(sql)){
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps=conn.prepareStatement(sql)){
             ps.setString(1, username);
             try(ResultSet rs=ps.executeQuery()){
                 if(rs.next()){
@@ -135,8 +174,8 @@ public class AccountDAO implements SuperDAO<Account> {
 
     public boolean doesUsernameExists(String username){
         String sql="Select count(*) from account where username=?";
-        Connection conn=ConnectionUtil.getConnection();
-        try(PreparedStatement ps=conn.prepareStatement(sql)){
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps=conn.prepareStatement(sql)){
             ps.setString(1, username);
             try(ResultSet rs=ps.executeQuery()){
                 if(rs.next()){
@@ -153,12 +192,16 @@ public class AccountDAO implements SuperDAO<Account> {
 
     }
 
+    /**
+     * @throws DuplicateKeyException if the username is already taken; the unique constraint on account.username
+     *         decides, so concurrent registrations of one name cannot both succeed
+     */
     @Override
     public Account insert(Account account) {
         
         String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
-        Connection conn = ConnectionUtil.getConnection();
-        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setString(1, account.getUsername());
             ps.setString(2, account.getPassword());
             ps.executeUpdate();
@@ -173,6 +216,9 @@ public class AccountDAO implements SuperDAO<Account> {
                 }
             }
         } catch (SQLException e) {
+            if (DuplicateKeyException.SQL_STATE.equals(e.getSQLState())) {
+                throw new DuplicateKeyException("Username already exists: " + account.getUsername(), e);
+            }
             throw new DAOException("Creating account failed due to SQL error", e);
         }
         
@@ -182,8 +228,8 @@ public class AccountDAO implements SuperDAO<Account> {
     public boolean update(Account account) {
         
         String sql = "UPDATE account SET username = ?, password = ? WHERE account_id = ?";
-        Connection conn = ConnectionUtil.getConnection();
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, account.getUsername());
             ps.setString(2, account.getPassword());
             ps.setInt(3, account.getAccount_id());
@@ -203,13 +249,106 @@ public class AccountDAO implements SuperDAO<Account> {
     public boolean delete(Account account) {
         
         String sql = "DELETE FROM account WHERE account_id = ?";
-        Connection conn = ConnectionUtil.getConnection();
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, account.getAccount_id());
             int affectedRows = ps.executeUpdate();
             return affectedRows > 0;
         } catch (SQLException e) {
             throw new DAOException("Deleting account failed due to SQL error", e);
         }
-    } 
+    }
+
+    /**
+     * Updates the username and password of an account and reads back its row as it was before, with a single
+     * statement: the UPDATE runs inside h2's OLD TABLE. Callers caching accounts by username learn which name the
+     * update replaced.
+     * @return the account as it was before the update
+     */
+    public Account updateReturningPrevious(Account account) {
+
+        String sql = "SELECT * FROM OLD TABLE (UPDATE account SET username = ?, password = ? WHERE account_id = ?)";
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, account.getUsername());
+            ps.setString(2, account.getPassword());
+            ps.setInt(3, account.getAccount_id());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
+                }
+                throw new DAOException("Updating account failed, no such account found.");
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Updating account failed due to SQL error", e);
+        }
+    }
+
+    /**
+     * Deletes an account and reads back the deleted row with a single statement (h2's OLD TABLE).
+     * @return the deleted account, or empty if there was no account with that id
+     */
+    public Optional<Account> deleteById(int accountId) {
+
+        String sql = "SELECT * FROM OLD TABLE (DELETE FROM account WHERE account_id = ?)";
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(new Account(rs.getInt("account_id"), rs.getString("username"),
+                            rs.getString("password")));
+                }
+                return Optional.empty();
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Deleting account failed due to SQL error", e);
+        }
+    }
+
+    @Override
+    public List<Account> insertAll(List<Account> accounts) {
+
+        String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
+        try {
+            int[] ids = BatchSupport.executeInBatches(sql, accounts, batchSize, true, (ps, account) -> {
+                ps.setString(1, account.getUsername());
+                ps.setString(2, account.getPassword());
+            });
+            List<Account> inserted = new ArrayList<>(accounts.size());
+            for (int i = 0; i < ids.length; i++) {
+                inserted.add(new Account(ids[i], accounts.get(i).getUsername(), accounts.get(i).getPassword()));
+            }
+            return inserted;
+        } catch (SQLException e) {
+            throw new DAOException("Batch creating accounts failed due to SQL error", e);
+        }
+    }
+
+    @Override
+    public int updateAll(List<Account> accounts) {
+
+        String sql = "UPDATE account SET username = ?, password = ? WHERE account_id = ?";
+        try {
+            return BatchSupport.sum(BatchSupport.executeInBatches(sql, accounts, batchSize, false, (ps, account) -> {
+                ps.setString(1, account.getUsername());
+                ps.setString(2, account.getPassword());
+                ps.setInt(3, account.getAccount_id());
+            }));
+        } catch (SQLException e) {
+            throw new DAOException("Batch updating accounts failed due to SQL error", e);
+        }
+    }
+
+    @Override
+    public int deleteAll(List<Account> accounts) {
+
+        String sql = "DELETE FROM account WHERE account_id = ?";
+        try {
+            return BatchSupport.sum(BatchSupport.executeInBatches(sql, accounts, batchSize, false,
+                    (ps, account) -> ps.setInt(1, account.getAccount_id())));
+        } catch (SQLException e) {
+            throw new DAOException("Batch deleting accounts failed due to SQL error", e);
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import Util.ConnectionUtil;
+
+/**
+ * Shared JDBC batching for the insertAll/updateAll/deleteAll operations of the DAOs. Rows are sent in chunks of
+ * batchSize with addBatch/executeBatch and each chunk is committed as its own transaction, so a failure rolls back
+ * only the chunk that failed; chunks before it stay committed.
+ */
+final class BatchSupport {
+
+    static final int DEFAULT_BATCH_SIZE = checkBatchSize(Integer.getInteger("db.batchSize", 500));
+
+    @FunctionalInterface
+    interface ParameterBinder<T> {
+        void bind(PreparedStatement ps, T item) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface SequencedBinder<T> {
+        void bind(PreparedStatement ps, T item, long changeSeq) throws SQLException;
+    }
+
+    private BatchSupport() {
+    }
+
+    /**
+     * @return batchSize
+     * @throws IllegalArgumentException if it is less than 1
+     */
+    static int checkBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        return batchSize;
+    }
+
+    /**
+     * Rolls back after the failure, attaching any error from the rollback itself to the failure rather than letting
+     * it take the failure's place.
+     */
+    static void rollback(Connection conn, Exception failure) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * @return for each item, in order, its generated key when generatedKeys is true, otherwise its update count
+     */
+    static <T> int[] executeInBatches(String sql, List<T> items, int batchSize, boolean generatedKeys,
+            ParameterBinder<T> binder) throws SQLException {
+        return executeInBatches(sql, items, batchSize, generatedKeys, null,
+                (ps, item, changeSeq) -> binder.bind(ps, item));
+    }
+
+    /**
+     * Like executeInBatches without changes, but hands every item a change_seq from changes. Each chunk takes its
+     * own range just before it executes and ends it once committed or rolled back, so committedThrough() keeps
+     * moving while a long batch runs instead of waiting for its last chunk.
+     * @param changes null to number nothing, in which case every changeSeq is 0
+     */
+    static <T> int[] executeInBatches(String sql, List<T> items, int batchSize, boolean generatedKeys,
+            ChangeSequence changes, SequencedBinder<T> binder) throws SQLException {
+        checkBatchSize(batchSize);
+        int[] results = new int[items.size()];
+        if (items.isEmpty()) {
+            return results;
+        }
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = generatedKeys
+                        ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                        : conn.prepareStatement(sql)) {
+            // the pool restores auto-commit when the connection is returned
+            conn.setAutoCommit(false);
+            for (int start = 0; start < items.size(); start += batchSize) {
+                int end = Math.min(start + batchSize, items.size());
+                long firstChangeSeq = changes == null ? 0 : changes.begin(end - start);
+                try {
+                    for (int i = start; i < end; i++) {
+                        binder.bind(ps, items.get(i), changes == null ? 0 : firstChangeSeq + i - start);
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    if (generatedKeys) {
+                        try (ResultSet keys = ps.getGeneratedKeys()) {
+                            for (int i = start; i < end; i++) {
+                                if (!keys.next()) {
+                                    throw new SQLException("Batch returned fewer generated keys than rows");
+                                }
+                                results[i] = keys.getInt(1);
+                            }
+                        }
+                    } else {
+                        System.arraycopy(counts, 0, results, start, counts.length);
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    rollback(conn, e);
+                    throw e;
+                } finally {
+                    if (changes != null) {
+                        changes.end(firstChangeSeq);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return the total of the update counts, or Statement.SUCCESS_NO_INFO if the driver did not report one of them
+     */
+    static int sum(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            if (count == Statement.SUCCESS_NO_INFO) {
+                return Statement.SUCCESS_NO_INFO;
+            }
+            total += Math.max(count, 0);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,76 @@
+package DAO;
+
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out change_seq numbers for MessageDAO writes and knows which of them may still be uncommitted. A
+ * database sequence alone would not do: two writes can commit in the opposite order to their numbers, and a
+ * reader that saw the later one first would move its cursor past the earlier one for good. So a writer takes its
+ * numbers with begin() before executing and gives them back with end() once committed (or rolled back), and
+ * readers only look at changes up to committedThrough(), below every number still in flight.
+ *
+ * Numbers only need to be unique and increasing within this process; the sequence starts after the highest
+ * change_seq in the database, read on first use.
+ */
+final class ChangeSequence {
+
+    private final LongSupplier highestStored;
+    private final ReentrantLock lock = new ReentrantLock();
+    // first number of each range in flight
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    private long last = -1;
+
+    /**
+     * @param highestStored reads the highest change_seq already in the database
+     */
+    ChangeSequence(LongSupplier highestStored) {
+        this.highestStored = highestStored;
+    }
+
+    /**
+     * Takes count consecutive numbers. Every call must be matched by one call to end() with its result.
+     * @return the first of them
+     */
+    long begin(int count) {
+        lock.lock();
+        try {
+            ensureStarted();
+            long first = last + 1;
+            last += Math.max(count, 1);
+            inFlight.add(first);
+            return first;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void end(long first) {
+        lock.lock();
+        try {
+            inFlight.remove(first);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the highest number such that every write numbered up to it has finished
+     */
+    long committedThrough() {
+        lock.lock();
+        try {
+            ensureStarted();
+            return inFlight.isEmpty() ? last : inFlight.first() - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureStarted() {
+        if (last < 0) {
+            last = highestStored.getAsLong();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package DAO;
+
+/**
+ * A write was rejected by a unique or primary key constraint (SQLState 23505).
+ */
+public class DuplicateKeyException extends DAOException {
+    private static final long serialVersionUID = 1L;
+
+    static final String SQL_STATE = "23505";
+
+    public DuplicateKeyException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
@@ -6,19 +6,41 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import Model.Message;
+import Model.MessageChange;
 import Util.ConnectionUtil;
 
+/**
+ * Every insert and update stamps the row with a new change_seq, and every delete leaves a tombstone row in
+ * message_tombstone with one, so getChangesSince can answer incremental syncs from the change_seq indexes.
+ * Numbers come from a ChangeSequence shared by all instances, as they share one database.
+ */
 public class MessageDAO implements SuperDAO<Message> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MessageDAO.class);
 
+    private static final ChangeSequence CHANGES = new ChangeSequence(MessageDAO::readHighestChangeSeq);
+
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int STREAM_SEGMENT_SIZE = 10000;
+
+    private int batchSize = BatchSupport.DEFAULT_BATCH_SIZE;
+
+    /**
+     * @throws IllegalArgumentException if batchSize is less than 1
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = BatchSupport.checkBatchSize(batchSize);
+    }
+
     private void handleSQLException(SQLException e,String sql, String errormessage){
         LOGGER.error("SQL Exception:{ }", e.getMessage());
         LOGGER.error("Sql state:{ }",e.getSQLState());
@@ -49,8 +71,8 @@ public class MessageDAO implements SuperDAO<Message> {
     public Optional<Message> getById(int id) {
         
         String sql="Select * from message where message_id=?";
-        Connection connection=ConnectionUtil.getConnection();
-        try(PreparedStatement ps=connection.prepareStatement(sql)){
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement ps=connection.prepareStatement(sql)){
             ps.setInt(1, id);
             try(ResultSet rs=ps.executeQuery()){
                 if(rs.next()){
@@ -66,12 +88,34 @@ public class MessageDAO implements SuperDAO<Message> {
         return Optional.empty();
     }
 
+    /**
+     * Binds the ids as a single array parameter, so the statement text (and its cached plan) is the same for any
+     * number of ids. h2 turns it into an IN-list lookup on the primary key.
+     */
+    @Override
+    public List<Message> getByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT * FROM message WHERE message_id = ANY(?)";
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setObject(1, ids.toArray(new Integer[0]));
+            try (ResultSet rs = ps.executeQuery()) {
+                return mapResultSetToList(rs);
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while getting messages with ids: " + ids);
+        }
+        return new ArrayList<>();
+    }
+
     @Override
     public List<Message> getAll() {
         List<Message> msg=new ArrayList<>();
         String sql="Select * from message";
-        Connection conn=ConnectionUtil.getConnection();
-        try(PreparedStatement ps=conn.prepareStatement(sql)){
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps=conn.prepareStatement(sql)){
             try(ResultSet rs=ps.executeQuery()){
             while(rs.next()){
                 msg.add(mapResultSetToMessage(rs));
@@ -86,10 +130,53 @@ public class MessageDAO implements SuperDAO<Message> {
         
     }
 
+    /**
+     * Hands every message to the consumer as it is read, without collecting them into a list. Embedded h2 ignores
+     * the fetch size and builds the whole result before returning the first row, so the query runs with
+     * LAZY_QUERY_EXECUTION on for its session, switched off again before the connection goes back to the pool.
+     * Messages are read in message_id order in segments of STREAM_SEGMENT_SIZE, each on its own borrow, so a long
+     * export neither holds one pooled connection throughout nor trips the pool's leak detection; like paging, it
+     * is not one snapshot, and sees messages created or deleted between segments.
+     */
+    public void forEachMessage(Consumer<Message> consumer) {
+        String sql = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+        int afterMessageId = 0;
+        int read;
+        do {
+            read = 0;
+            try (Connection conn = ConnectionUtil.getConnection();
+                    PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                            ResultSet.CONCUR_READ_ONLY)) {
+                ps.setInt(1, afterMessageId);
+                ps.setInt(2, STREAM_SEGMENT_SIZE);
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                setLazyQueryExecution(conn, true);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Message message = mapResultSetToMessage(rs);
+                        afterMessageId = message.getMessage_id();
+                        read++;
+                        consumer.accept(message);
+                    }
+                } finally {
+                    setLazyQueryExecution(conn, false);
+                }
+            } catch (SQLException e) {
+                handleSQLException(e, sql, "Error while streaming all messages");
+            }
+        } while (read == STREAM_SEGMENT_SIZE);
+    }
+
+    private static void setLazyQueryExecution(Connection conn, boolean lazy) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + (lazy ? 1 : 0));
+        }
+    }
+
     public List<Message> getMessagesByAccountId(int accountId) {
         String sql = "SELECT * FROM message WHERE posted_by = ?";
-        Connection conn = ConnectionUtil.getConnection();
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, accountId);
             try (ResultSet rs = ps.executeQuery()) {
                 return mapResultSetToList(rs);
@@ -100,16 +187,61 @@ public class MessageDAO implements SuperDAO<Message> {
         return new ArrayList<>();
     }
 
+
+    /**
+     * Keyset page over all messages in message_id order.
+     * @param afterMessageId only messages with a greater id are returned (0 for the first page)
+     */
+    public List<Message> getPage(int afterMessageId, int limit) {
+        String sql = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, afterMessageId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                return mapResultSetToList(rs);
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while retrieving messages after id: " + afterMessageId);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Keyset page over one account's messages in (time_posted_epoch, message_id) order.
+     * Pass Long.MIN_VALUE and 0 as the position for the first page.
+     */
+    public List<Message> getPageByAccountId(int accountId, long afterTimePostedEpoch, int afterMessageId, int limit) {
+        String sql = "SELECT * FROM message WHERE posted_by = ?"
+                + " AND (time_posted_epoch > ? OR (time_posted_epoch = ? AND message_id > ?))"
+                + " ORDER BY time_posted_epoch, message_id LIMIT ?";
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, accountId);
+            ps.setLong(2, afterTimePostedEpoch);
+            ps.setLong(3, afterTimePostedEpoch);
+            ps.setInt(4, afterMessageId);
+            ps.setInt(5, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                return mapResultSetToList(rs);
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while retrieving a page of messages for account ID: " + accountId);
+        }
+        return new ArrayList<>();
+    }
     
     @Override
     public Message insert(Message message) {
         
-        String sql = "INSERT INTO message (posted_by,message_text,time_posted_epoch) VALUES (?, ?, ?)";
-        Connection conn = ConnectionUtil.getConnection();
-        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        String sql = "INSERT INTO message (posted_by,message_text,time_posted_epoch,change_seq) VALUES (?, ?, ?, ?)";
+        long changeSeq = CHANGES.begin(1);
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1, message.getPosted_by());
             ps.setString(2, message.getMessage_text());
             ps.setLong(3,message.getTime_posted_epoch());
+            ps.setLong(4, changeSeq);
 
             ps.executeUpdate();
             try (ResultSet generatedKeys = ps.getGeneratedKeys()) {
@@ -123,6 +255,8 @@ public class MessageDAO implements SuperDAO<Message> {
         
         }catch(SQLException e) {
             handleSQLException(e,sql,"inserting message failed due to SQL error");
+        } finally {
+            CHANGES.end(changeSeq);
         }
         throw new DAOException("failed to insert message");
     }
@@ -130,17 +264,22 @@ public class MessageDAO implements SuperDAO<Message> {
     @Override
     public boolean update(Message message) {
         
-        String sql = "UPDATE message SET posted_by = ?, message_text = ?, time_posted_epoch = ? WHERE message_id = ?";
+        String sql = "UPDATE message SET posted_by = ?, message_text = ?, time_posted_epoch = ?, change_seq = ?"
+                + " WHERE message_id = ?";
         int rowsUpdated = 0;
-        Connection conn = ConnectionUtil.getConnection();
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        long changeSeq = CHANGES.begin(1);
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, message.getPosted_by());
             ps.setString(2, message.getMessage_text());
             ps.setLong(3, message.getTime_posted_epoch());
-            ps.setInt(4, message.getMessage_id());
+            ps.setLong(4, changeSeq);
+            ps.setInt(5, message.getMessage_id());
             rowsUpdated = ps.executeUpdate();
         } catch (SQLException e) {
             handleSQLException(e, sql, "Error while updating the message with id: " + message.getMessage_id());
+        } finally {
+            CHANGES.end(changeSeq);
         }
         return rowsUpdated > 0;
         
@@ -148,21 +287,330 @@ public class MessageDAO implements SuperDAO<Message> {
 
     
 
+    /**
+     * Sets only the text of a message and reads back the updated row, with a single statement: the UPDATE runs
+     * inside h2's FINAL TABLE, which yields the rows as they are after it.
+     * @param beforeCommit sees the updated row before the transaction commits, and may throw a RuntimeException
+     *        to roll the update back
+     * @return the updated message, or empty if there is no message with that id
+     */
+    public Optional<Message> updateText(int messageId, String messageText, Consumer<Message> beforeCommit) {
+        String sql = "SELECT * FROM FINAL TABLE"
+                + " (UPDATE message SET message_text = ?, change_seq = ? WHERE message_id = ?)";
+        long changeSeq = CHANGES.begin(1);
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, messageText);
+            ps.setLong(2, changeSeq);
+            ps.setInt(3, messageId);
+            // the pool restores auto-commit when the connection is returned
+            conn.setAutoCommit(false);
+            try {
+                Optional<Message> updated;
+                try (ResultSet rs = ps.executeQuery()) {
+                    updated = rs.next() ? Optional.of(mapResultSetToMessage(rs)) : Optional.empty();
+                }
+                if (updated.isPresent()) {
+                    beforeCommit.accept(updated.get());
+                }
+                conn.commit();
+                return updated;
+            } catch (SQLException | RuntimeException e) {
+                BatchSupport.rollback(conn, e);
+                throw e;
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while updating the text of the message with id: " + messageId);
+        } finally {
+            CHANGES.end(changeSeq);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Deletes a message and reads back the deleted row with a single statement (the DELETE runs inside h2's OLD
+     * TABLE, which yields the rows as they were before it), then records its tombstone in the same transaction.
+     * @param beforeCommit sees the deleted row before the transaction commits, and may throw a RuntimeException
+     *        to roll the delete back
+     * @return the deleted message, or empty if there was no message with that id
+     */
+    public Optional<Message> deleteById(int messageId, Consumer<Message> beforeCommit) {
+        String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
+        String tombstoneSql = "INSERT INTO message_tombstone (message_id, posted_by, change_seq, deleted_at)"
+                + " VALUES (?, ?, ?, ?)";
+        long changeSeq = CHANGES.begin(1);
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql);
+                PreparedStatement tombstone = conn.prepareStatement(tombstoneSql)) {
+            ps.setInt(1, messageId);
+            // the pool restores auto-commit when the connection is returned
+            conn.setAutoCommit(false);
+            try {
+                Optional<Message> deleted;
+                try (ResultSet rs = ps.executeQuery()) {
+                    deleted = rs.next() ? Optional.of(mapResultSetToMessage(rs)) : Optional.empty();
+                }
+                if (deleted.isPresent()) {
+                    beforeCommit.accept(deleted.get());
+                    tombstone.setInt(1, messageId);
+                    tombstone.setInt(2, deleted.get().getPosted_by());
+                    tombstone.setLong(3, changeSeq);
+                    tombstone.setLong(4, System.currentTimeMillis());
+                    tombstone.executeUpdate();
+                }
+                conn.commit();
+                return deleted;
+            } catch (SQLException | RuntimeException e) {
+                BatchSupport.rollback(conn, e);
+                throw e;
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while deleting the message with id: " + messageId);
+        } finally {
+            CHANGES.end(changeSeq);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Deletes the message and records a tombstone for it (with the given posted_by) in the same transaction.
+     */
     @Override
     public boolean delete(Message message) {
-    
+        return deleteWithTombstones(List.of(message), 1) > 0;
+    }
 
-        String sql = "DELETE FROM message WHERE message_id = ?";
+    @Override
+    public List<Message> insertAll(List<Message> messages) {
+        return insertAll(messages, batchSize);
+    }
+
+    /**
+     * Like insertAll(messages), with an explicit batch size. A batch size of at least messages.size() inserts
+     * every message with one executeBatch and one commit, so either all of them are stored or none is.
+     */
+    public List<Message> insertAll(List<Message> messages, int batchSize) {
+        String sql = "INSERT INTO message (posted_by,message_text,time_posted_epoch,change_seq) VALUES (?, ?, ?, ?)";
+        List<Message> inserted = new ArrayList<>(messages.size());
+        try {
+            int[] ids = BatchSupport.executeInBatches(sql, messages, batchSize, true, CHANGES,
+                    (ps, message, changeSeq) -> {
+                        ps.setInt(1, message.getPosted_by());
+                        ps.setString(2, message.getMessage_text());
+                        ps.setLong(3, message.getTime_posted_epoch());
+                        ps.setLong(4, changeSeq);
+                    });
+            for (int i = 0; i < ids.length; i++) {
+                Message message = messages.get(i);
+                inserted.add(new Message(ids[i], message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch()));
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "batch inserting messages failed due to SQL error");
+        }
+        return inserted;
+    }
+
+    @Override
+    public int updateAll(List<Message> messages) {
+        String sql = "UPDATE message SET posted_by = ?, message_text = ?, time_posted_epoch = ?, change_seq = ?"
+                + " WHERE message_id = ?";
         int rowsUpdated = 0;
-        Connection conn = ConnectionUtil.getConnection();
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, message.getMessage_id());
-            rowsUpdated = ps.executeUpdate();
+        try {
+            rowsUpdated = BatchSupport.sum(BatchSupport.executeInBatches(sql, messages, batchSize, false, CHANGES,
+                    (ps, message, changeSeq) -> {
+                        ps.setInt(1, message.getPosted_by());
+                        ps.setString(2, message.getMessage_text());
+                        ps.setLong(3, message.getTime_posted_epoch());
+                        ps.setLong(4, changeSeq);
+                        ps.setInt(5, message.getMessage_id());
+                    }));
         } catch (SQLException e) {
-            handleSQLException(e, sql, "Error while deleting the message with id: " + message.getMessage_id());
+            handleSQLException(e, sql, "Error while batch updating messages");
         }
-        return rowsUpdated > 0;
-        
+        return rowsUpdated;
     }
-    
+
+    /**
+     * Tombstones are recorded with the posted_by of the given messages, in the same transactions.
+     */
+    @Override
+    public int deleteAll(List<Message> messages) {
+        return deleteWithTombstones(messages, batchSize);
+    }
+
+    /**
+     * Deletes in batches like BatchSupport, one transaction and one change_seq range per batch, adding a tombstone
+     * for each message that was actually deleted. A message deleted concurrently is deleted by one transaction only, as the other waits
+     * for its row lock and then finds no row, so it gets a single tombstone.
+     */
+    private int deleteWithTombstones(List<Message> messages, int batchSize) {
+        String sql = "DELETE FROM message WHERE message_id = ?";
+        String tombstoneSql = "INSERT INTO message_tombstone (message_id, posted_by, change_seq, deleted_at)"
+                + " VALUES (?, ?, ?, ?)";
+        BatchSupport.checkBatchSize(batchSize);
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        int rowsDeleted = 0;
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql);
+                PreparedStatement tombstones = conn.prepareStatement(tombstoneSql)) {
+            // the pool restores auto-commit when the connection is returned
+            conn.setAutoCommit(false);
+            for (int start = 0; start < messages.size(); start += batchSize) {
+                int end = Math.min(start + batchSize, messages.size());
+                long firstChangeSeq = CHANGES.begin(end - start);
+                try {
+                    for (int i = start; i < end; i++) {
+                        ps.setInt(1, messages.get(i).getMessage_id());
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    boolean anyDeleted = false;
+                    long deletedAt = System.currentTimeMillis();
+                    for (int i = start; i < end; i++) {
+                        if (counts[i - start] > 0) {
+                            Message message = messages.get(i);
+                            tombstones.setInt(1, message.getMessage_id());
+                            tombstones.setInt(2, message.getPosted_by());
+                            tombstones.setLong(3, firstChangeSeq + i - start);
+                            tombstones.setLong(4, deletedAt);
+                            tombstones.addBatch();
+                            anyDeleted = true;
+                            rowsDeleted++;
+                        }
+                    }
+                    if (anyDeleted) {
+                        tombstones.executeBatch();
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    BatchSupport.rollback(conn, e);
+                    throw e;
+                } finally {
+                    CHANGES.end(firstChangeSeq);
+                }
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while deleting messages");
+        }
+        return rowsDeleted;
+    }
+
+    /**
+     * Reads the change log: messages inserted or updated, and tombstones of messages deleted, with a change_seq in
+     * (afterChangeSeq, throughChangeSeq], in change_seq order. Both sides are range scans on their change_seq
+     * index, each stopping after limit rows, so the cost follows the number of changes and not the table size.
+     * @param throughChangeSeq normally getCommittedChangeSeq(), so no change still being written is skipped
+     */
+    public List<MessageChange> getChangesSince(long afterChangeSeq, long throughChangeSeq, int limit) {
+        String sql = "(SELECT message_id, posted_by, message_text, time_posted_epoch, change_seq, FALSE AS deleted"
+                + " FROM message WHERE change_seq > ? AND change_seq <= ? ORDER BY change_seq LIMIT ?)"
+                + " UNION ALL"
+                + " (SELECT message_id, posted_by, NULL, NULL, change_seq, TRUE"
+                + " FROM message_tombstone WHERE change_seq > ? AND change_seq <= ? ORDER BY change_seq LIMIT ?)"
+                + " ORDER BY change_seq LIMIT ?";
+        List<MessageChange> changes = new ArrayList<>();
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int part = 0; part < 2; part++) {
+                ps.setLong(part * 3 + 1, afterChangeSeq);
+                ps.setLong(part * 3 + 2, throughChangeSeq);
+                ps.setInt(part * 3 + 3, limit);
+            }
+            ps.setInt(7, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new MessageChange(rs.getLong("change_seq"), rs.getBoolean("deleted"),
+                            mapResultSetToMessage(rs)));
+                }
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while reading message changes after: " + afterChangeSeq);
+        }
+        return changes;
+    }
+
+    /**
+     * @return the change_seq through which every change has been committed (see ChangeSequence)
+     */
+    public long getCommittedChangeSeq() {
+        return CHANGES.committedThrough();
+    }
+
+    /**
+     * @return the highest change_seq of any tombstone removed by compactTombstones, or 0
+     */
+    public long getCompactedThrough() {
+        String sql = "SELECT compacted_through FROM message_change_horizon";
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while reading the message change horizon");
+        }
+        return 0;
+    }
+
+    /**
+     * Removes the tombstones of messages deleted before the given time and raises the compaction horizon past
+     * them, in one transaction.
+     * @return the number of tombstones removed
+     */
+    public int compactTombstones(long deletedBeforeMillis) {
+        String maxSql = "SELECT MAX(change_seq) FROM message_tombstone WHERE deleted_at < ?";
+        String sql = "DELETE FROM message_tombstone WHERE deleted_at < ? AND change_seq <= ?";
+        String horizonSql = "UPDATE message_change_horizon SET compacted_through = GREATEST(compacted_through, ?)";
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement max = conn.prepareStatement(maxSql);
+                PreparedStatement ps = conn.prepareStatement(sql);
+                PreparedStatement horizon = conn.prepareStatement(horizonSql)) {
+            long compactedThrough;
+            max.setLong(1, deletedBeforeMillis);
+            try (ResultSet rs = max.executeQuery()) {
+                rs.next();
+                compactedThrough = rs.getLong(1);
+                if (rs.wasNull()) {
+                    return 0;
+                }
+            }
+            // the pool restores auto-commit when the connection is returned
+            conn.setAutoCommit(false);
+            try {
+                ps.setLong(1, deletedBeforeMillis);
+                ps.setLong(2, compactedThrough);
+                int removed = ps.executeUpdate();
+                horizon.setLong(1, compactedThrough);
+                horizon.executeUpdate();
+                conn.commit();
+                return removed;
+            } catch (SQLException e) {
+                BatchSupport.rollback(conn, e);
+                throw e;
+            }
+        } catch (SQLException e) {
+            handleSQLException(e, sql, "Error while compacting message tombstones");
+        }
+        return 0;
+    }
+
+    /**
+     * The sequence must continue past every change_seq stored, including compacted ones.
+     */
+    private static long readHighestChangeSeq() {
+        String sql = "SELECT GREATEST((SELECT COALESCE(MAX(change_seq), 0) FROM message),"
+                + " (SELECT COALESCE(MAX(change_seq), 0) FROM message_tombstone),"
+                + " (SELECT COALESCE(MAX(compacted_through), 0) FROM message_change_horizon))";
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new DAOException("Error while reading the highest message change_seq", e);
+        }
+    }
+
 }
@@ -1,10 +1,18 @@
 package DAO;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface SuperDAO<T> {
     Optional<T> getById(int id);
+
+    /**
+     * Reads all the given ids with a single query. Ids with no row are left out.
+     * @return the items found, in no particular order
+     */
+    List<T> getByIds(Collection<Integer> ids);
+
     List<T> getAll();
 
     T insert(T t);
@@ -13,4 +21,20 @@ public interface SuperDAO<T> {
 
     boolean delete(T t);
 
+    /**
+     * Inserts all items with JDBC batches, one transaction per batch.
+     * @return the inserted items with their generated ids, in the same order as the input
+     */
+    List<T> insertAll(List<T> items);
+
+    /**
+     * @return the number of rows updated, or Statement.SUCCESS_NO_INFO if the driver did not report it
+     */
+    int updateAll(List<T> items);
+
+    /**
+     * @return the number of rows deleted, or Statement.SUCCESS_NO_INFO if the driver did not report it
+     */
+    int deleteAll(List<T> items);
+
 }
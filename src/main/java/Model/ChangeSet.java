@@ -0,0 +1,63 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models the answer to an incremental sync: the changes after the client's cursor.
+ */
+public class ChangeSet {
+    /**
+     * The changes, in increasing change_seq, each message listed at most once in its latest state.
+     */
+    public List<MessageChange> changes;
+    /**
+     * The cursor to pass as "since" on the next sync.
+     */
+    public long next_since;
+    /**
+     * True if more changes are waiting and the client should sync again right away.
+     */
+    public boolean has_more;
+
+    public ChangeSet(){
+    }
+
+    public ChangeSet(List<MessageChange> changes, long next_since, boolean has_more) {
+        this.changes = changes;
+        this.next_since = next_since;
+        this.has_more = has_more;
+    }
+
+    public List<MessageChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<MessageChange> changes) {
+        this.changes = changes;
+    }
+
+    public long getNext_since() {
+        return next_since;
+    }
+
+    public void setNext_since(long next_since) {
+        this.next_since = next_since;
+    }
+
+    public boolean isHas_more() {
+        return has_more;
+    }
+
+    public void setHas_more(boolean has_more) {
+        this.has_more = has_more;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "changes=" + changes +
+                ", next_since=" + next_since +
+                ", has_more=" + has_more +
+                '}';
+    }
+}
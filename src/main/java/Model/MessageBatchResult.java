@@ -0,0 +1,70 @@
+package Model;
+
+/**
+ * This is a class that models the outcome for one message of a batch post, reported at the same position as the
+ * message in the request.
+ */
+public class MessageBatchResult {
+    /**
+     * The status this message would have got from POST /messages: 200 if it was created, 400 if it was rejected.
+     */
+    public int status;
+    /**
+     * The created message with its generated message_id, or null if it was rejected.
+     */
+    public Message message;
+    /**
+     * Why the message was rejected, or null if it was created.
+     */
+    public String error;
+
+    public MessageBatchResult(){
+    }
+
+    public MessageBatchResult(int status, Message message, String error) {
+        this.status = status;
+        this.message = message;
+        this.error = error;
+    }
+
+    public static MessageBatchResult created(Message message) {
+        return new MessageBatchResult(200, message, null);
+    }
+
+    public static MessageBatchResult rejected(String error) {
+        return new MessageBatchResult(400, null, error);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "status=" + status +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
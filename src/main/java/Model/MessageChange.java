@@ -0,0 +1,59 @@
+package Model;
+
+/**
+ * This is a class that models one entry of the message change log: a message as created or last edited, or a
+ * message that was deleted.
+ */
+public class MessageChange {
+    /**
+     * The position of the change in the log. Changes are listed in increasing change_seq.
+     */
+    public long change_seq;
+    /**
+     * True if the message was deleted. Its message then only carries message_id and posted_by.
+     */
+    public boolean deleted;
+    public Message message;
+
+    public MessageChange(){
+    }
+
+    public MessageChange(long change_seq, boolean deleted, Message message) {
+        this.change_seq = change_seq;
+        this.deleted = deleted;
+        this.message = message;
+    }
+
+    public long getChange_seq() {
+        return change_seq;
+    }
+
+    public void setChange_seq(long change_seq) {
+        this.change_seq = change_seq;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChange{" +
+                "change_seq=" + change_seq +
+                ", deleted=" + deleted +
+                ", message=" + message +
+                '}';
+    }
+}
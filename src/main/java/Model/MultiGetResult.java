@@ -0,0 +1,49 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models the answer to a lookup of several items by id.
+ */
+public class MultiGetResult<T> {
+    /**
+     * The items found, in the order their ids were requested.
+     */
+    public List<T> items;
+    /**
+     * The requested ids with no item, in the order they were requested.
+     */
+    public List<Integer> missing_ids;
+
+    public MultiGetResult(){
+    }
+
+    public MultiGetResult(List<T> items, List<Integer> missing_ids) {
+        this.items = items;
+        this.missing_ids = missing_ids;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    public List<Integer> getMissing_ids() {
+        return missing_ids;
+    }
+
+    public void setMissing_ids(List<Integer> missing_ids) {
+        this.missing_ids = missing_ids;
+    }
+
+    @Override
+    public String toString() {
+        return "MultiGetResult{" +
+                "items=" + items +
+                ", missing_ids=" + missing_ids +
+                '}';
+    }
+}
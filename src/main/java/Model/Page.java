@@ -0,0 +1,49 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of a keyset-paginated listing.
+ */
+public class Page<T> {
+    /**
+     * The items on this page, in listing order.
+     */
+    public List<T> items;
+    /**
+     * An opaque cursor to pass back to fetch the following page, or null if this is the last page.
+     */
+    public String next_cursor;
+
+    public Page(){
+    }
+
+    public Page(List<T> items, String next_cursor) {
+        this.items = items;
+        this.next_cursor = next_cursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    public String getNext_cursor() {
+        return next_cursor;
+    }
+
+    public void setNext_cursor(String next_cursor) {
+        this.next_cursor = next_cursor;
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "items=" + items +
+                ", next_cursor='" + next_cursor + '\'' +
+                '}';
+    }
+}
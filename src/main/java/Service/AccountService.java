@@ -1,26 +1,50 @@
 package Service;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 import DAO.AccountDAO;
 import DAO.DAOException;
+import DAO.DuplicateKeyException;
 import Model.Account;
+import Util.LruCache;
 
+/**
+ * Accounts are read through two caches, by account_id and by username, since they are looked up on every message
+ * post, registration and login but almost never change. Only existing accounts are cached. The caches are sized
+ * and expired with the system properties cache.account.maxSize and cache.account.ttlMillis. Each cache is only
+ * filled by its own read-through loads, so a load racing with an update or delete is never stored.
+ *
+ * Registration is a single INSERT: the unique constraint on account.username decides whether the name is free,
+ * so two concurrent registrations of one name cannot both succeed, and a free name costs no lookup first. Only a
+ * username already in the cache is rejected without going to the database.
+ */
 public class AccountService {
+
     private AccountDAO accountDAO;
-  
+
+    private final LruCache<Integer, Account> accountsById;
+    private final LruCache<String, Account> accountsByUsername;
 
     public AccountService(){
-        accountDAO=new AccountDAO();
+        this(new AccountDAO());
     }
     public AccountService(AccountDAO accountDAO){
         this.accountDAO=accountDAO;
+        int maxSize = Integer.getInteger("cache.account.maxSize", 10000);
+        long ttlMillis = Long.getLong("cache.account.ttlMillis", 300000L);
+        this.accountsById = new LruCache<>(maxSize, ttlMillis);
+        this.accountsByUsername = new LruCache<>(maxSize, ttlMillis);
     }
     public Optional<Account> getAccountById(int id) {
       
         try {
-            Optional<Account> account = accountDAO.getById(id);
+            Optional<Account> account = Optional.ofNullable(accountsById.get(id,
+                    key -> accountDAO.getById(key).orElse(null)));
         
             return account;
         } catch (DAOException e) {
@@ -28,6 +52,26 @@ public class AccountService {
         }
     }
     
+    /**
+     * Looks up several accounts at once: cached accounts are served from the cache and the rest are read with a
+     * single query, then cached.
+     * @return the accounts found, keyed by account_id; ids with no account are absent
+     */
+    public Map<Integer, Account> getAccountsByIds(Collection<Integer> ids) {
+
+        try {
+            return accountsById.getAll(ids, missing -> {
+                Map<Integer, Account> loaded = new HashMap<>();
+                for (Account account : accountDAO.getByIds(missing)) {
+                    loaded.put(account.getAccount_id(), account);
+                }
+                return loaded;
+            });
+        } catch (DAOException e) {
+            throw new UnauthorizedException("Exception occurred while fetching accounts", e);
+        }
+    }
+
     public List<Account> getAllAccounts() {
 
         try {
@@ -42,7 +86,8 @@ public class AccountService {
     public Optional<Account> findAccountByUsername(String username) {
        
         try {
-            Optional<Account> account = accountDAO.findAccountByUsername(username);
+            Optional<Account> account = Optional.ofNullable(accountsByUsername.get(username,
+                    key -> accountDAO.findAccountByUsername(key).orElse(null)));
         
             return account;
         } catch (DAOException e) {
@@ -51,38 +96,29 @@ public class AccountService {
     }
     public Optional<Account> validateLogin(Account account) {
      
-        try {
-            Optional<Account> validatedAccount = accountDAO.validateLogin(account.getUsername(),
-                    account.getPassword());
-       
-            return validatedAccount;
-        } catch (DAOException e) {
-            throw new UnauthorizedException("Exception occurred while validating login", e);
-        }
+        Optional<Account> validatedAccount = findAccountByUsername(account.getUsername())
+                .filter(found -> Objects.equals(account.getPassword(), found.getPassword()));
+
+        return validatedAccount;
     }
 
     private void validateAccount(Account account) {
-      
-        try {
 
-            String username = account.getUsername().trim();
-            String password = account.getPassword().trim();
-
-            if (username.isEmpty()) {
-                throw new UnauthorizedException("Username cannot be blank");
-            }
-            if (password.isEmpty()) {
-                throw new UnauthorizedException("Password cannot be empty");
-            }
-
-            if (password.length() < 4) {
-                throw new UnauthorizedException("Password must be at least 4 characters long");
-            }
-            if (accountDAO.doesUsernameExists(account.getUsername())) {
-                throw new UnauthorizedException("The username must be unique");
-            }
-        } catch (DAOException e) {
-            throw new UnauthorizedException("Exception occurred while validating account", e);
+        String username = account.getUsername().trim();
+        String password = account.getPassword().trim();
+
+        if (username.isEmpty()) {
+            throw new UnauthorizedException("Username cannot be blank");
+        }
+        if (password.isEmpty()) {
+            throw new UnauthorizedException("Password cannot be empty");
+        }
+
+        if (password.length() < 4) {
+            throw new UnauthorizedException("Password must be at least 4 characters long");
+        }
+        if (accountsByUsername.get(account.getUsername()) != null) {
+            throw new UnauthorizedException("The username must be unique");
         }
     }
 
@@ -90,13 +126,13 @@ public class AccountService {
     
         try {
             validateAccount(account);
-            Optional<Account> searchedAccount = findAccountByUsername(account.getUsername());
-            if (searchedAccount.isPresent()) {
-                throw new UnauthorizedException("Account already exist");
-            }
             Account createdAccount = accountDAO.insert(account);
+            accountsById.put(createdAccount.getAccount_id(), createdAccount);
+            accountsByUsername.put(createdAccount.getUsername(), createdAccount);
       
             return createdAccount;
+        } catch (DuplicateKeyException e) {
+            throw new UnauthorizedException("The username must be unique", e);
         } catch (DAOException e) {
             throw new UnauthorizedException("Exception occurred while creating account", e);
         }
@@ -104,9 +140,11 @@ public class AccountService {
     public boolean updateAccount(Account account) {
         try {
             account.setPassword(account.password);
-            boolean updated = accountDAO.update(account);
+            Account previous = accountDAO.updateReturningPrevious(account);
+            invalidate(account);
+            accountsByUsername.invalidate(previous.getUsername());
        
-            return updated;
+            return true;
         } catch (DAOException e) {
             throw new UnauthorizedException("Exception occurred while while updating account", e);
         }
@@ -118,9 +156,11 @@ public class AccountService {
             throw new IllegalArgumentException("Account ID cannot be null");
         }
         try {
-            boolean deleted = accountDAO.delete(account);
+            Optional<Account> deleted = accountDAO.deleteById(account.getAccount_id());
+            invalidate(account);
+            deleted.ifPresent(previous -> accountsByUsername.invalidate(previous.getUsername()));
 
-            return deleted;
+            return deleted.isPresent();
         } catch (DAOException e) {
             throw new UnauthorizedException("Exception occurred while while deleting account", e);
         }
@@ -129,7 +169,7 @@ public class AccountService {
     public boolean accountExists(int accountId) {
      
         try {
-            Optional<Account> account = accountDAO.getById(accountId);
+            Optional<Account> account = getAccountById(accountId);
             boolean exists = account.isPresent();
        
             return exists;
@@ -137,4 +177,27 @@ public class AccountService {
             throw new UnauthorizedException("Exception occurred while checking account existence", e);
         }
     }
+
+    /**
+     * Drops the account from both caches, including under the username it was cached with if that has changed.
+     * Callers also drop the username the row had before their write, which may be cached without the id.
+     */
+    private void invalidate(Account account) {
+        Account cached = accountsById.get(account.getAccount_id());
+        if (cached != null) {
+            accountsByUsername.invalidate(cached.getUsername());
+        }
+        accountsById.invalidate(account.getAccount_id());
+        if (account.getUsername() != null) {
+            accountsByUsername.invalidate(account.getUsername());
+        }
+    }
+
+    public LruCache<Integer, Account> getAccountsByIdCache() {
+        return accountsById;
+    }
+
+    public LruCache<String, Account> getAccountsByUsernameCache() {
+        return accountsByUsername;
+    }
 }
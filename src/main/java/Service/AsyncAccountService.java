@@ -0,0 +1,48 @@
+package Service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import Model.Account;
+
+/**
+ * CompletableFuture-returning variant of AccountService, run on the database executor like AsyncMessageService.
+ */
+public class AsyncAccountService {
+    private final AccountService accountService;
+    private final Executor executor;
+
+    public AsyncAccountService(AccountService accountService, Executor executor) {
+        this.accountService = accountService;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Optional<Account>> getAccountById(int id) {
+        return submit(() -> accountService.getAccountById(id));
+    }
+
+    public CompletableFuture<Map<Integer, Account>> getAccountsByIds(Collection<Integer> ids) {
+        return submit(() -> accountService.getAccountsByIds(ids));
+    }
+
+    public CompletableFuture<Account> createAccount(Account account) {
+        return submit(() -> accountService.createAccount(account));
+    }
+
+    public CompletableFuture<Optional<Account>> validateLogin(Account account) {
+        return submit(() -> accountService.validateLogin(account));
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import Model.Account;
+import Model.ChangeSet;
+import Model.Message;
+import Model.MessageBatchResult;
+import Model.MultiGetResult;
+import Model.Page;
+
+/**
+ * CompletableFuture-returning variant of MessageService. Every call runs the MessageService method of the same
+ * name on the database executor, so the calling request thread is free while the query runs. Exceptions the
+ * method throws, such as UnauthorizedException, complete the future exceptionally, as does a full executor
+ * (RejectedExecutionException).
+ */
+public class AsyncMessageService {
+    private final MessageService messageService;
+    private final Executor executor;
+
+    public AsyncMessageService(MessageService messageService, Executor executor) {
+        this.messageService = messageService;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Optional<Message>> getMessageById(int id) {
+        return submit(() -> messageService.getMessageById(id));
+    }
+
+    public CompletableFuture<MultiGetResult<Message>> getMessagesByIds(List<Integer> ids) {
+        return submit(() -> messageService.getMessagesByIds(ids));
+    }
+
+    public CompletableFuture<List<Message>> getAllMessages() {
+        return submit(messageService::getAllMessages);
+    }
+
+    public CompletableFuture<List<Message>> getMessagesByAccountId(int accountId, long version) {
+        return submit(() -> messageService.getMessagesByAccountId(accountId, version));
+    }
+
+    public CompletableFuture<Page<Message>> getMessagesPage(String cursor, int limit) {
+        return submit(() -> messageService.getMessagesPage(cursor, limit));
+    }
+
+    public CompletableFuture<Page<Message>> getMessagesPageByAccountId(int accountId, String cursor, int limit) {
+        return submit(() -> messageService.getMessagesPageByAccountId(accountId, cursor, limit));
+    }
+
+    public CompletableFuture<ChangeSet> getChangesSince(long since, int limit) {
+        return submit(() -> messageService.getChangesSince(since, limit));
+    }
+
+    public CompletableFuture<Message> createMessage(Message message, Optional<Account> account) {
+        return submit(() -> messageService.createMessage(message, account));
+    }
+
+    public CompletableFuture<List<MessageBatchResult>> createMessages(List<Message> messages,
+            Map<Integer, Account> accounts) {
+        return submit(() -> messageService.createMessages(messages, accounts));
+    }
+
+    public CompletableFuture<Message> updateMessageText(int messageId, String messageText) {
+        return submit(() -> messageService.updateMessageText(messageId, messageText, message -> { }));
+    }
+
+    public CompletableFuture<Optional<Message>> deleteMessageById(int messageId) {
+        return submit(() -> messageService.deleteMessageById(messageId, message -> { }));
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import Model.Message;
+import Util.JsonSupport;
+import Util.MessageJsonCache;
+
+/**
+ * Pushes every message created, updated or deleted through MessageService to its subscribers, as Server-Sent
+ * Events frames: "event: created|updated|deleted" with the message as JSON data. A subscriber may ask for the
+ * messages of one account only.
+ *
+ * Changes are handed to a single feed thread, which encodes each one once and appends the frame to the bounded
+ * buffer of every matching subscriber. Subscribers write their buffers without blocking, so the feed thread never
+ * waits on a client. A subscriber whose buffer overflows has fallen too far behind and is disconnected rather than
+ * silently missing changes; likewise, if the feed thread itself falls behind, every subscriber is disconnected.
+ * Every heartbeatMillis each subscriber is sent a comment frame, which keeps idle connections open through
+ * proxies and idle timeouts and finds clients that have gone away.
+ *
+ * An idle subscriber costs a few small objects and no thread, and the feed thread is only started by the first
+ * subscription, so publishing costs nothing while nobody listens. close() stops the feed thread and drops every
+ * subscriber.
+ */
+public class MessageFeed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageFeed.class);
+
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_CHANGES_PER_PASS = 256;
+
+    private final MessageJsonCache messageJson;
+    private final int bufferSize;
+    private final long heartbeatNanos;
+    private final BlockingQueue<Change> changes;
+
+    private final Set<Subscriber> allMessages = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Integer, Set<Subscriber>> byAccount = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong disconnectedSlow = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread dispatcher;
+    private volatile boolean closed;
+
+    /**
+     * @param bufferSize how many frames a subscriber may have waiting before it is disconnected
+     * @param queueSize how many changes may wait for the feed thread before every subscriber is disconnected
+     */
+    public MessageFeed(MessageJsonCache messageJson, int bufferSize, int queueSize, long heartbeatMillis) {
+        this.messageJson = messageJson;
+        this.bufferSize = bufferSize;
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        this.changes = new LinkedBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * @throws IllegalStateException if the feed has been closed
+     */
+    public void subscribe(Subscriber subscriber) {
+        if (closed) {
+            throw new IllegalStateException("Message feed is closed");
+        }
+        if (!subscriber.subscribed.compareAndSet(false, true)) {
+            return;
+        }
+        if (subscriber.postedBy == null) {
+            allMessages.add(subscriber);
+        } else {
+            byAccount.computeIfAbsent(subscriber.postedBy, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        }
+        subscriberCount.incrementAndGet();
+        if (started.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::dispatch, "message-feed");
+            thread.setDaemon(true);
+            dispatcher = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the feed thread and unsubscribes everyone. Connections are left to be closed by whoever owns them,
+     * normally the server that is shutting down.
+     */
+    public void close() {
+        closed = true;
+        Thread thread = dispatcher;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        forEachSubscriber(this::unsubscribe);
+        changes.clear();
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        if (!subscriber.subscribed.compareAndSet(true, false)) {
+            return;
+        }
+        if (subscriber.postedBy == null) {
+            allMessages.remove(subscriber);
+        } else {
+            byAccount.computeIfPresent(subscriber.postedBy, (key, subscribers) -> {
+                subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+        subscriberCount.decrementAndGet();
+    }
+
+    /**
+     * Queues the change for the feed thread; returns at once, and does nothing while there are no subscribers.
+     * @param type CREATED, UPDATED or DELETED
+     */
+    public void publish(String type, Message message) {
+        if (subscriberCount.get() == 0 || closed) {
+            return;
+        }
+        if (!changes.offer(new Change(type, message))) {
+            LOGGER.warn("Message feed is {} changes behind, disconnecting all subscribers", changes.size());
+            changes.clear();
+            forEachSubscriber(this::disconnectSlow);
+        }
+    }
+
+    private void dispatch() {
+        long nextHeartbeat = System.nanoTime() + heartbeatNanos;
+        List<Change> pass = new ArrayList<>(MAX_CHANGES_PER_PASS);
+        Set<Subscriber> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        // a subscription racing with close() may start this thread after close() looked for it
+        while (!closed) {
+            try {
+                Change first = changes.poll(Math.max(0, nextHeartbeat - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    pass.add(first);
+                    changes.drainTo(pass, MAX_CHANGES_PER_PASS - 1);
+                    // queue a whole pass of changes before asking anyone to write, so a burst goes out in few writes
+                    for (Change change : pass) {
+                        byte[] frame = encode(change);
+                        deliver(allMessages, frame, touched);
+                        Set<Subscriber> accountSubscribers = byAccount.get(change.message.getPosted_by());
+                        if (accountSubscribers != null) {
+                            deliver(accountSubscribers, frame, touched);
+                        }
+                    }
+                }
+                if (System.nanoTime() - nextHeartbeat >= 0) {
+                    forEachSubscriber(subscriber -> {
+                        if (enqueue(subscriber, HEARTBEAT)) {
+                            touched.add(subscriber);
+                        }
+                    });
+                    nextHeartbeat = System.nanoTime() + heartbeatNanos;
+                }
+                for (Subscriber subscriber : touched) {
+                    subscriber.framesPending();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.warn("Could not deliver message feed changes", e);
+            } finally {
+                pass.clear();
+                touched.clear();
+            }
+        }
+    }
+
+    private void deliver(Set<Subscriber> subscribers, byte[] frame, Set<Subscriber> touched) {
+        for (Subscriber subscriber : subscribers) {
+            if (enqueue(subscriber, frame)) {
+                touched.add(subscriber);
+            }
+        }
+    }
+
+    /**
+     * @return false if the subscriber's buffer was full and it has been disconnected
+     */
+    private boolean enqueue(Subscriber subscriber, byte[] frame) {
+        if (subscriber.pendingCount.incrementAndGet() > bufferSize) {
+            subscriber.pendingCount.decrementAndGet();
+            disconnectSlow(subscriber);
+            return false;
+        }
+        subscriber.pending.add(frame);
+        return true;
+    }
+
+    private void disconnectSlow(Subscriber subscriber) {
+        if (subscriber.subscribed.get()) {
+            unsubscribe(subscriber);
+            disconnectedSlow.incrementAndGet();
+            subscriber.overflowed();
+        }
+    }
+
+    private void forEachSubscriber(Consumer<Subscriber> action) {
+        allMessages.forEach(action);
+        byAccount.values().forEach(subscribers -> subscribers.forEach(action));
+    }
+
+    private byte[] encode(Change change) {
+        byte[] json;
+        try {
+            // a deleted message is not served again, so keep it out of the JSON cache
+            json = DELETED.equals(change.type) ? JsonSupport.MESSAGE_WRITER.writeValueAsBytes(change.message)
+                    : messageJson.toJson(change.message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] head = ("event: " + change.type + "\ndata: ").getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new byte[head.length + json.length + 2];
+        System.arraycopy(head, 0, frame, 0, head.length);
+        System.arraycopy(json, 0, frame, head.length, json.length);
+        frame[frame.length - 2] = '\n';
+        frame[frame.length - 1] = '\n';
+        return frame;
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * @return how many subscribers have been disconnected for falling behind
+     */
+    public long getDisconnectedSlow() {
+        return disconnectedSlow.get();
+    }
+
+    private static class Change {
+        private final String type;
+        private final Message message;
+
+        Change(String type, Message message) {
+            this.type = type;
+            this.message = message;
+        }
+    }
+
+    /**
+     * One connection to the feed. The feed appends frames to its buffer from the feed thread and then calls
+     * framesPending(); the connection takes them with poll() and writes them out. Neither callback may block.
+     */
+    public abstract static class Subscriber {
+        private final Integer postedBy;
+        private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        /**
+         * @param postedBy the account whose messages to receive, or null for all messages
+         */
+        protected Subscriber(Integer postedBy) {
+            this.postedBy = postedBy;
+        }
+
+        public Integer getPostedBy() {
+            return postedBy;
+        }
+
+        /**
+         * @return the next frame to write, or null if there is none
+         */
+        protected byte[] poll() {
+            byte[] frame = pending.poll();
+            if (frame != null) {
+                pendingCount.decrementAndGet();
+            }
+            return frame;
+        }
+
+        protected boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        /**
+         * Frames were added to the buffer.
+         */
+        protected abstract void framesPending();
+
+        /**
+         * The buffer overflowed and the feed has dropped this subscriber; the connection should be closed.
+         */
+        protected abstract void overflowed();
+    }
+}
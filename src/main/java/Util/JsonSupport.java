@@ -0,0 +1,78 @@
+package Util;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import Model.Account;
+import Model.ChangeSet;
+import Model.Message;
+import Model.MessageBatchResult;
+import Model.MultiGetResult;
+import Model.Page;
+
+/**
+ * The application-wide Jackson configuration. ObjectMapper is thread-safe and expensive to create, so one instance
+ * is shared by the controller and by Javalin, and readers and writers for the payload types are built once so
+ * their serializers are resolved up front instead of on every request. The Blackbird module replaces reflective
+ * getter/setter calls with generated accessors.
+ *
+ * The CBOR_ variants encode the same payloads in CBOR (RFC 8949), a binary format that is cheaper to parse and
+ * generate, for clients that negotiate it with Content-Type and Accept headers.
+ */
+public class JsonSupport {
+
+    public static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new BlackbirdModule());
+
+    public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+    public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    public static final ObjectReader MESSAGE_LIST_READER = MAPPER.readerFor(new TypeReference<List<Message>>() {
+    });
+    public static final ObjectWriter MESSAGE_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Message>>() {
+    });
+    public static final ObjectWriter MESSAGE_MULTI_GET_WRITER = MAPPER.writerFor(
+            new TypeReference<MultiGetResult<Message>>() {
+            });
+    public static final ObjectWriter MESSAGE_BATCH_RESULT_WRITER = MAPPER.writerFor(
+            new TypeReference<List<MessageBatchResult>>() {
+            });
+    public static final ObjectWriter MESSAGE_PAGE_WRITER = MAPPER.writerFor(new TypeReference<Page<Message>>() {
+    });
+    public static final ObjectWriter CHANGE_SET_WRITER = MAPPER.writerFor(ChangeSet.class);
+
+    public static final String CBOR_CONTENT_TYPE = "application/cbor";
+    public static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory())
+            .registerModule(new BlackbirdModule());
+
+    public static final ObjectReader CBOR_ACCOUNT_READER = CBOR_MAPPER.readerFor(Account.class);
+    public static final ObjectWriter CBOR_ACCOUNT_WRITER = CBOR_MAPPER.writerFor(Account.class);
+    public static final ObjectReader CBOR_MESSAGE_READER = CBOR_MAPPER.readerFor(Message.class);
+    public static final ObjectWriter CBOR_MESSAGE_WRITER = CBOR_MAPPER.writerFor(Message.class);
+    public static final ObjectReader CBOR_MESSAGE_LIST_READER = CBOR_MAPPER.readerFor(
+            new TypeReference<List<Message>>() {
+            });
+    public static final ObjectWriter CBOR_MESSAGE_LIST_WRITER = CBOR_MAPPER.writerFor(
+            new TypeReference<List<Message>>() {
+            });
+    public static final ObjectWriter CBOR_MESSAGE_PAGE_WRITER = CBOR_MAPPER.writerFor(
+            new TypeReference<Page<Message>>() {
+            });
+
+    public static final ObjectWriter CBOR_MESSAGE_MULTI_GET_WRITER = CBOR_MAPPER.writerFor(
+            new TypeReference<MultiGetResult<Message>>() {
+            });
+    public static final ObjectWriter CBOR_MESSAGE_BATCH_RESULT_WRITER = CBOR_MAPPER.writerFor(
+            new TypeReference<List<MessageBatchResult>>() {
+            });
+    public static final ObjectWriter CBOR_CHANGE_SET_WRITER = CBOR_MAPPER.writerFor(ChangeSet.class);
+
+    private JsonSupport() {
+    }
+}
@@ -0,0 +1,318 @@
+package Util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A size-bounded, in-process cache with least-recently-used eviction and an optional time-to-live. All methods
+ * are thread-safe; loaders passed to get(key, loader) and getAll(keys, loader) run outside the lock, so a slow database call never blocks
+ * other readers of the cache.
+ *
+ * A load that races with a put() or invalidate() is not cached, so a value read before a write can never
+ * overwrite the entry written or invalidated after it. Concurrent misses of one key share a single load, but only
+ * while no put() or invalidate() has happened since it started: a reader arriving after the write starts a load of
+ * its own rather than waiting for one that may have read the old value.
+ *
+ * The cache is guarded by a ReentrantLock rather than synchronized: a virtual thread waiting for a monitor pins
+ * its carrier thread, while one waiting for the lock is unmounted.
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Keys with a read-through load in flight, mapped to the latest load, which other readers of the key wait for.
+     * A put() or invalidate() of the key removes it, which tells the load not to store its now stale value and
+     * keeps later readers from joining it.
+     */
+    private final Map<K, CompletableFuture<V>> loading = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * @param ttlMillis how long an entry stays valid after it was stored; 0 or less disables expiry
+     */
+    public LruCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000L : 0;
+        this.entries = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value, or null if there is none or it has expired
+     */
+    public V get(K key) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            if (ttlNanos > 0 && System.nanoTime() - entry.storedAt > ttlNanos) {
+                entries.remove(key);
+                expirations++;
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read-through lookup. A null result from the loader is returned but not cached. A caller that finds a load of
+     * the key in flight waits for it instead of calling the loader.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        CompletableFuture<V> running;
+        CompletableFuture<V> load = new CompletableFuture<>();
+        lock.lock();
+        try {
+            V cached = get(key);
+            if (cached != null) {
+                return cached;
+            }
+            running = loading.putIfAbsent(key, load);
+        } finally {
+            lock.unlock();
+        }
+        if (running != null) {
+            return join(running);
+        }
+        V loaded;
+        try {
+            loaded = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            lock.lock();
+            try {
+                loading.remove(key, load);
+            } finally {
+                lock.unlock();
+            }
+            load.completeExceptionally(e);
+            throw e;
+        }
+        lock.lock();
+        try {
+            if (loading.remove(key, load) && loaded != null) {
+                entries.put(key, new Entry<>(loaded));
+            }
+        } finally {
+            lock.unlock();
+        }
+        load.complete(loaded);
+        return loaded;
+    }
+
+    /**
+     * Read-through lookup of several keys: the keys not cached are handed to the loader in one call. Keys the
+     * loader leaves out are absent from the result and not cached.
+     * @return the value of every key that has one
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys, Function<? super Set<K>, ? extends Map<K, V>> loader) {
+        Map<K, V> values = new HashMap<>();
+        Map<K, CompletableFuture<V>> tokens = new HashMap<>();
+        lock.lock();
+        try {
+            for (K key : keys) {
+                if (values.containsKey(key) || tokens.containsKey(key)) {
+                    continue;
+                }
+                V cached = get(key);
+                if (cached != null) {
+                    values.put(key, cached);
+                } else {
+                    CompletableFuture<V> token = new CompletableFuture<>();
+                    tokens.put(key, token);
+                    loading.put(key, token);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (tokens.isEmpty()) {
+            return values;
+        }
+        Map<K, V> loaded;
+        try {
+            loaded = loader.apply(new HashMap<>(tokens).keySet());
+        } catch (RuntimeException | Error e) {
+            lock.lock();
+            try {
+                tokens.forEach(loading::remove);
+            } finally {
+                lock.unlock();
+            }
+            tokens.values().forEach(token -> token.completeExceptionally(e));
+            throw e;
+        }
+        lock.lock();
+        try {
+            tokens.forEach((key, token) -> {
+                V value = loaded.get(key);
+                if (loading.remove(key, token) && value != null) {
+                    entries.put(key, new Entry<>(value));
+                }
+                if (value != null) {
+                    values.put(key, value);
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+        tokens.forEach((key, token) -> token.complete(loaded.get(key)));
+        return values;
+    }
+
+    private static <V> V join(CompletableFuture<V> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void put(K key, V value) {
+        lock.lock();
+        try {
+            loading.remove(key);
+            entries.put(key, new Entry<>(value));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the value already cached for the key, or the given value if it was stored
+     */
+    public V putIfAbsent(K key, V value) {
+        lock.lock();
+        try {
+            V cached = get(key);
+            if (cached != null) {
+                return cached;
+            }
+            put(key, value);
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            loading.remove(key);
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            loading.clear();
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEvictions() {
+        lock.lock();
+        try {
+            return evictions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getExpirations() {
+        lock.lock();
+        try {
+            return expirations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getHitRatio() {
+        lock.lock();
+        try {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long storedAt = System.nanoTime();
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package Util;
+
+import java.util.List;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import Model.Message;
+
+/**
+ * Keeps the UTF-8 JSON encoding of recently served messages so responses can be assembled from cached bytes
+ * instead of running Jackson for every message again. Each entry remembers the message it was encoded from and
+ * is only used while the message being written is still equal to it, so a message changed behind the cache's
+ * back is re-encoded rather than served stale. MessageService also invalidates entries when it writes.
+ *
+ * Only lists of up to half the cache size go through the cache. A longer list, such as a full listing of a large
+ * table, is encoded directly: passing it through would evict every hot single-message entry to make room for
+ * rows that are unlikely to be asked for again, and costs more than encoding them once.
+ */
+public class MessageJsonCache {
+
+    private final LruCache<Integer, Encoded> encoded;
+    private final int maxCachedListSize;
+
+    public MessageJsonCache(int maxSize) {
+        this.encoded = new LruCache<>(maxSize, 0);
+        this.maxCachedListSize = maxSize / 2;
+    }
+
+    public byte[] toJson(Message message) throws JsonProcessingException {
+        Encoded cached = encoded.get(message.getMessage_id());
+        if (cached != null && cached.matches(message)) {
+            return cached.json;
+        }
+        byte[] json = JsonSupport.MESSAGE_WRITER.writeValueAsBytes(message);
+        encoded.put(message.getMessage_id(), new Encoded(message, json));
+        return json;
+    }
+
+    /**
+     * @return a JSON array of the messages, spliced together from their cached encodings if the list is short
+     *         enough to be cached
+     */
+    public byte[] toJson(List<Message> messages) throws JsonProcessingException {
+        if (messages.size() > maxCachedListSize) {
+            return JsonSupport.MESSAGE_LIST_WRITER.writeValueAsBytes(messages);
+        }
+        byte[][] parts = new byte[messages.size()][];
+        int length = 2 + Math.max(0, messages.size() - 1);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = toJson(messages.get(i));
+            length += parts[i].length;
+        }
+        byte[] json = new byte[length];
+        int offset = 0;
+        json[offset++] = '[';
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                json[offset++] = ',';
+            }
+            System.arraycopy(parts[i], 0, json, offset, parts[i].length);
+            offset += parts[i].length;
+        }
+        json[offset] = ']';
+        return json;
+    }
+
+    public void invalidate(int messageId) {
+        encoded.invalidate(messageId);
+    }
+
+    public LruCache<Integer, ?> getCache() {
+        return encoded;
+    }
+
+    private static class Encoded {
+        private final int postedBy;
+        private final String messageText;
+        private final long timePostedEpoch;
+        private final byte[] json;
+
+        Encoded(Message message, byte[] json) {
+            this.postedBy = message.getPosted_by();
+            this.messageText = message.getMessage_text();
+            this.timePostedEpoch = message.getTime_posted_epoch();
+            this.json = json;
+        }
+
+        boolean matches(Message message) {
+            return postedBy == message.getPosted_by() && timePostedEpoch == message.getTime_posted_epoch()
+                    && Objects.equals(messageText, message.getMessage_text());
+        }
+    }
+}
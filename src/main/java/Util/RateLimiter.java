@@ -0,0 +1,147 @@
+package Util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-key token buckets, refilled at ratePerSecond up to burst tokens. Each bucket is kept as a single AtomicLong
+ * in the form of the generic cell rate algorithm: the time at which the bucket will be full again. Taking a token
+ * pushes that time one refill interval later, and is refused if it would land more than burst intervals in the
+ * future. A request is then one map lookup and one compare-and-set, with no lock.
+ *
+ * A bucket whose full-again time is more than idleMillis in the past holds nothing a new bucket would not, so
+ * buckets like that are swept out at most once per idleMillis by whichever caller notices the sweep is due. The
+ * table therefore holds only keys active within about the last two idle periods, and never more than maxKeys:
+ * a new key that finds the table full first drops every bucket that is already full again, which loses nothing,
+ * and if that is not enough drops arbitrary buckets down to three quarters of maxKeys, which only lets those
+ * keys start over with a full bucket.
+ */
+public class RateLimiter {
+
+    private final long intervalNanos;
+    private final int burst;
+    private final long burstNanos;
+    private final long idleNanos;
+    private final int maxKeys;
+    private final ConcurrentHashMap<Integer, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+
+    /**
+     * @param ratePerSecond tokens added per second; 0 or less disables the limiter
+     * @param burst how many tokens a bucket holds, and so how many requests an idle key may make at once
+     * @param maxKeys how many buckets may be kept at most
+     */
+    public RateLimiter(double ratePerSecond, int burst, long idleMillis, int maxKeys) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be at least 1: " + maxKeys);
+        }
+        this.intervalNanos = ratePerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond) : 0;
+        this.burst = Math.max(burst, 1);
+        this.burstNanos = intervalNanos * this.burst;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.maxKeys = maxKeys;
+        this.nextSweep = new AtomicLong(System.nanoTime() + idleNanos);
+    }
+
+    /**
+     * Takes a token from the key's bucket.
+     * @return 0 if a token was taken, otherwise how many nanoseconds until one will be available
+     */
+    public long tryAcquire(int key) {
+        return tryAcquire(key, 1);
+    }
+
+    /**
+     * Takes permits tokens from the key's bucket, all or none. More permits than the burst are never granted, so
+     * callers charging for several writes at once should cap the charge at getBurst().
+     * @return 0 if the tokens were taken, otherwise how many nanoseconds until that many will be available
+     */
+    public long tryAcquire(int key, int permits) {
+        if (intervalNanos == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        sweepIfDue(now);
+        AtomicLong fullAt = buckets.get(key);
+        if (fullAt == null) {
+            if (buckets.size() >= maxKeys) {
+                makeRoom(now);
+            }
+            fullAt = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        long cost = intervalNanos * permits;
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + cost;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back tokens taken with tryAcquire that ended up not being used.
+     */
+    public void release(int key, int permits) {
+        AtomicLong fullAt = buckets.get(key);
+        if (fullAt != null) {
+            fullAt.addAndGet(-intervalNanos * permits);
+        }
+    }
+
+    private void makeRoom(long now) {
+        buckets.values().removeIf(fullAt -> fullAt.get() - now <= 0);
+        int excess = buckets.size() - maxKeys * 3 / 4;
+        for (Iterator<Integer> keys = buckets.keySet().iterator(); excess > 0 && keys.hasNext(); excess--) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + idleNanos)) {
+            return;
+        }
+        // a caller holding a bucket removed here only loses tokens that a fresh, full bucket gives back
+        buckets.values().removeIf(fullAt -> now - fullAt.get() > idleNanos);
+    }
+
+    /**
+     * @return how many tokens a full bucket holds
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Thrown when a key has no token left.
+     */
+    public static class LimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterNanos;
+
+        public LimitExceededException(long retryAfterNanos) {
+            super("Rate limit exceeded");
+            this.retryAfterNanos = retryAfterNanos;
+        }
+
+        /**
+         * @return whole seconds until a token is available, at least 1, for a Retry-After header
+         */
+        public long getRetryAfterSeconds() {
+            return Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+}
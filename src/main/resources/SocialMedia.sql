@@ -1,3 +1,5 @@
+drop table if exists message_change_horizon;
+drop table if exists message_tombstone;
 drop table if exists message;
 drop table if exists account;
 create table account (
@@ -10,8 +12,33 @@ create table message (
     posted_by int,
     message_text varchar(255),
     time_posted_epoch bigint,
-    foreign key (posted_by) references  account(account_id)
+    -- position in the change log, set by MessageDAO on every insert and update; rows written by hand sort first
+    change_seq bigint default 1 not null
 );
+-- lookups by account (WHERE posted_by = ?) and per-account timelines (WHERE posted_by = ? ORDER BY
+-- time_posted_epoch; message_id is the row key). h2 2.1 does not reuse it for the foreign key below and adds a
+-- posted_by index of its own for the constraint.
+create index message_posted_by_time_idx on message (posted_by, time_posted_epoch);
+-- global time ordering: ORDER BY time_posted_epoch, message_id
+create index message_time_idx on message (time_posted_epoch, message_id);
+alter table message add foreign key (posted_by) references account(account_id);
+-- incremental sync: WHERE change_seq > ? ORDER BY change_seq
+create index message_change_seq_idx on message (change_seq);
+
+-- deleted messages, kept for incremental sync until they are older than the retention window
+create table message_tombstone (
+    message_id int primary key,
+    posted_by int,
+    change_seq bigint not null,
+    deleted_at bigint not null
+);
+create index message_tombstone_change_seq_idx on message_tombstone (change_seq);
+create index message_tombstone_deleted_at_idx on message_tombstone (deleted_at);
+-- the highest change_seq of any compacted tombstone: sync cursors below it may have missed a deletion
+create table message_change_horizon (
+    compacted_through bigint not null
+);
+insert into message_change_horizon (compacted_through) values (0);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
@@ -0,0 +1,100 @@
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Util.ConnectionUtil;
+
+public class AccountCacheTest {
+    AccountDAO accountDAO;
+    AccountService accountService;
+
+    /**
+     * Before every test, reset the database and create an AccountService with empty caches.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountDAO = new AccountDAO();
+        accountService = new AccountService(accountDAO);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("cache.account.ttlMillis");
+    }
+
+    /**
+     * Reading account 1 by id and by username, which caches it, then changing its password with updateAccount
+     *
+     * Expected: both lookups return the new password
+     */
+    @Test
+    public void updateAccountInvalidatesBothCaches() {
+        Assert.assertEquals("password", accountService.getAccountById(1).get().getPassword());
+        Assert.assertEquals("password", accountService.findAccountByUsername("testuser1").get().getPassword());
+
+        Assert.assertTrue(accountService.updateAccount(new Account(1, "testuser1", "new password")));
+
+        Assert.assertEquals("new password", accountService.getAccountById(1).get().getPassword());
+        Assert.assertEquals("new password", accountService.findAccountByUsername("testuser1").get().getPassword());
+    }
+
+    /**
+     * Reading account 1 by username only, so it is not cached by id, then renaming it with updateAccount
+     *
+     * Expected: the old username no longer finds the account, and the new one does
+     */
+    @Test
+    public void usernameChangeDropsTheOldKey() {
+        Assert.assertTrue(accountService.findAccountByUsername("testuser1").isPresent());
+        Assert.assertNull(accountService.getAccountsByIdCache().get(1));
+
+        accountService.updateAccount(new Account(1, "renamed", "password"));
+
+        Assert.assertEquals(Optional.empty(), accountService.findAccountByUsername("testuser1"));
+        Assert.assertEquals(1, accountService.findAccountByUsername("renamed").get().getAccount_id());
+    }
+
+    /**
+     * Creating an account, reading it by id and by username, then deleting it with only its id
+     *
+     * Expected: neither lookup finds it afterwards
+     */
+    @Test
+    public void deleteAccountInvalidatesBothCaches() {
+        Account created = accountService.createAccount(new Account("user", "password"));
+        Assert.assertTrue(accountService.getAccountById(created.getAccount_id()).isPresent());
+        Assert.assertTrue(accountService.findAccountByUsername("user").isPresent());
+
+        Assert.assertTrue(accountService.deleteAccount(new Account(created.getAccount_id(), null, null)));
+
+        Assert.assertEquals(Optional.empty(), accountService.getAccountById(created.getAccount_id()));
+        Assert.assertEquals(Optional.empty(), accountService.findAccountByUsername("user"));
+    }
+
+    /**
+     * With cache.account.ttlMillis set to 200, reading account 1, changing its password behind the service's back,
+     * then reading it again at once and after the TTL
+     *
+     * Expected: the cached account is served within the TTL, and reloaded once it has expired
+     */
+    @Test
+    public void cachedAccountsExpire() throws InterruptedException {
+        System.setProperty("cache.account.ttlMillis", "200");
+        accountService = new AccountService(accountDAO);
+        accountService.getAccountById(1);
+
+        accountDAO.update(new Account(1, "testuser1", "new password"));
+        Assert.assertEquals("password", accountService.getAccountById(1).get().getPassword());
+
+        Thread.sleep(300);
+        Assert.assertEquals("new password", accountService.getAccountById(1).get().getPassword());
+        Assert.assertEquals(1, accountService.getAccountsByIdCache().getExpirations());
+    }
+}
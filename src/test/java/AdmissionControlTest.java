@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AdmissionControlTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    ThreadPoolExecutor databaseExecutor;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app admitting one read and one write at a
+     * time with no queue, with its service calls on a one-thread database executor.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("http.admission.read.initialLimit", "1");
+        System.setProperty("http.admission.read.maxQueued", "0");
+        System.setProperty("http.admission.read.adaptive", "false");
+        System.setProperty("http.admission.write.initialLimit", "1");
+        System.setProperty("http.admission.write.maxQueued", "0");
+        System.setProperty("http.admission.write.adaptive", "false");
+        databaseExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(10));
+        socialMediaController = new SocialMediaController(databaseExecutor);
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        databaseExecutor.shutdownNow();
+        for (String kind : new String[] { "read", "write" }) {
+            System.clearProperty("http.admission." + kind + ".initialLimit");
+            System.clearProperty("http.admission." + kind + ".maxQueued");
+            System.clearProperty("http.admission." + kind + ".adaptive");
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 while another GET is still being processed, then a
+     * DELETE, then the GET again once the first one has finished
+     * 
+     * Expected Response:
+     *  Status Code: 503 with a Retry-After header for the second GET, 200 for the DELETE (writes are limited
+     *  separately) and for the retried GET
+     */
+    @Test
+    public void shedsReadsOverTheLimit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        databaseExecutor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        // admitted, then waits for the blocked database executor
+        CompletableFuture<HttpResponse<String>> first = webClient.sendAsync(getRequest,
+                HttpResponse.BodyHandlers.ofString());
+        while (socialMediaController.getReadAdmission().getInFlight() == 0) {
+            Thread.sleep(10);
+        }
+
+        HttpResponse<String> shed = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(503, shed.statusCode());
+        Assert.assertEquals("1", shed.headers().firstValue("Retry-After").orElse(null));
+
+        release.countDown();
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, first.get(5, TimeUnit.SECONDS).statusCode());
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(0, socialMediaController.getReadAdmission().getInFlight());
+        Assert.assertEquals(0, socialMediaController.getWriteAdmission().getInFlight());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=ndjson, then GET localhost:8080/messages/1
+     * 
+     * Expected Response:
+     *  Status Code: 200 for both; only the second goes through read admission, so the export's latency is not
+     *  one of its samples
+     */
+    @Test
+    public void exportsBypassReadAdmission() throws Exception {
+        HttpRequest streamRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=ndjson"))
+                .build();
+        Assert.assertEquals(200, webClient.send(streamRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(0, socialMediaController.getReadAdmission().getAdmitted());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        Assert.assertEquals(200, webClient.send(getRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(1, socialMediaController.getReadAdmission().getAdmitted());
+    }
+}
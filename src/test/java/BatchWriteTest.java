@@ -0,0 +1,126 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.h2.api.Trigger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.DAOException;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Model.MessageChange;
+import Util.ConnectionUtil;
+
+public class BatchWriteTest {
+    AccountDAO accountDAO;
+
+    /**
+     * Before every test, reset the database and create an AccountDAO that sends two rows per batch.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountDAO = new AccountDAO();
+        accountDAO.setBatchSize(2);
+    }
+
+    /**
+     * Inserting five accounts, in three batches of at most two
+     *
+     * Expected: every account is inserted, and the generated ids come back in input order
+     */
+    @Test
+    public void insertAllSpansBatches() {
+        List<Account> inserted = accountDAO.insertAll(Arrays.asList(new Account("a", "password"),
+                new Account("b", "password"), new Account("c", "password"), new Account("d", "password"),
+                new Account("e", "password")));
+        Assert.assertEquals(5, inserted.size());
+        for (int i = 0; i < inserted.size(); i++) {
+            Assert.assertEquals(i + 2, inserted.get(i).getAccount_id());
+            Assert.assertEquals(accountDAO.getById(i + 2).get(), inserted.get(i));
+        }
+        Assert.assertEquals(5, accountDAO.updateAll(inserted));
+        Assert.assertEquals(5, accountDAO.deleteAll(inserted));
+        Assert.assertEquals(1, accountDAO.getAll().size());
+    }
+
+    /**
+     * Inserting four accounts, the fourth with a username that is already taken
+     *
+     * Expected: a DAOException; the first batch stays committed and the second, failed one is rolled back
+     */
+    @Test
+    public void failedBatchIsRolledBack() {
+        try {
+            accountDAO.insertAll(Arrays.asList(new Account("a", "password"), new Account("b", "password"),
+                    new Account("c", "password"), new Account("testuser1", "password")));
+            Assert.fail("expected the duplicate username to fail the batch");
+        } catch (DAOException e) {
+            // expected
+        }
+        Assert.assertTrue(accountDAO.findAccountByUsername("a").isPresent());
+        Assert.assertTrue(accountDAO.findAccountByUsername("b").isPresent());
+        Assert.assertFalse(accountDAO.findAccountByUsername("c").isPresent());
+        Assert.assertEquals(3, accountDAO.getAll().size());
+    }
+
+    /**
+     * Setting a batch size of 0
+     *
+     * Expected: an IllegalArgumentException, rather than batches that never advance
+     */
+    /**
+     * Inserting five messages in batches of two, with a trigger that reads the committed change_seq as the third
+     * message, the first of the second batch, is inserted
+     *
+     * Expected: by then the first batch's change_seqs are committed, rather than held back until the last batch
+     */
+    @Test
+    public void changeSeqsAreCommittedBatchByBatch() throws SQLException {
+        try (Connection conn = ConnectionUtil.getConnection();
+                Statement statement = conn.createStatement()) {
+            statement.execute("CREATE TRIGGER committed_through BEFORE INSERT ON message FOR EACH ROW CALL \""
+                    + CommittedThroughTrigger.class.getName() + "\"");
+        }
+        MessageDAO messageDAO = new MessageDAO();
+        messageDAO.setBatchSize(2);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            messages.add(new Message(1, "message " + i, 1669947792 + i));
+        }
+        List<Message> inserted = messageDAO.insertAll(messages);
+
+        List<MessageChange> changes = messageDAO.getChangesSince(0, messageDAO.getCommittedChangeSeq(), 10);
+        long secondChangeSeq = changes.stream()
+                .filter(change -> change.getMessage().getMessage_id() == inserted.get(1).getMessage_id())
+                .findFirst().orElseThrow().getChange_seq();
+        Assert.assertTrue(CommittedThroughTrigger.seenAtThirdMessage >= secondChangeSeq);
+    }
+
+    /**
+     * Records MessageDAO's committed change_seq when the third message of changeSeqsAreCommittedBatchByBatch is
+     * inserted.
+     */
+    public static class CommittedThroughTrigger implements Trigger {
+        static volatile long seenAtThirdMessage = -1;
+
+        @Override
+        public void fire(Connection conn, Object[] oldRow, Object[] newRow) {
+            if ("message 3".equals(newRow[2])) {
+                seenAtThirdMessage = new MessageDAO().getCommittedChangeSeq();
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeMustBePositive() {
+        accountDAO.setBatchSize(0);
+    }
+}
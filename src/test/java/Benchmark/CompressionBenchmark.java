@@ -0,0 +1,74 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import Model.Message;
+import Util.JsonSupport;
+
+/**
+ * Measures the CPU cost and the bytes saved by compressing message list JSON of several sizes, with a new
+ * Deflater per response (as GZIPOutputStream does) and with one Deflater that is reset and reused (as the pooled
+ * GzipHandler in SocialMediaController does). Run manually:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.CompressionBenchmark
+ */
+public class CompressionBenchmark {
+
+    private static final int[] MESSAGE_COUNTS = { 1, 10, 100, 1_000, 10_000 };
+    private static final long BYTES_PER_SIZE = 200_000_000L;
+
+    public static void main(String[] args) throws JsonProcessingException {
+        byte[] buffer = new byte[64 * 1024];
+        Deflater reused = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        System.out.printf("%10s %12s %12s %8s %16s %16s%n", "messages", "json bytes", "gzip bytes", "saved",
+                "new Deflater us", "reused us");
+        for (int count : MESSAGE_COUNTS) {
+            byte[] json = JsonSupport.MESSAGE_LIST_WRITER.writeValueAsBytes(messages(count));
+            int iterations = (int) Math.max(10, BYTES_PER_SIZE / json.length);
+
+            long compressed = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                compressed = deflate(deflater, json, buffer);
+                deflater.end();
+            }
+            long perNew = (System.nanoTime() - start) / iterations;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                reused.reset();
+                compressed = deflate(reused, json, buffer);
+            }
+            long perReused = (System.nanoTime() - start) / iterations;
+
+            System.out.printf("%10d %12d %12d %7.1f%% %16.1f %16.1f%n", count, json.length, compressed,
+                    100.0 * (json.length - compressed) / json.length, perNew / 1000.0, perReused / 1000.0);
+        }
+        reused.end();
+    }
+
+    private static long deflate(Deflater deflater, byte[] input, byte[] buffer) {
+        deflater.setInput(input);
+        deflater.finish();
+        long total = 0;
+        while (!deflater.finished()) {
+            total += deflater.deflate(buffer);
+        }
+        // gzip adds a 10 byte header and an 8 byte trailer around the deflate stream
+        return total + 18;
+    }
+
+    private static List<Message> messages(int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            messages.add(new Message(i, i % 50, "benchmark message number " + i + " with some typical text",
+                    1_669_947_792L + i * 37L));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,94 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Compares bulk posting throughput over HTTP: one POST /messages per message against POST /messages/batch with
+ * batches of several sizes. Run manually, it resets the database and starts the app on port 8080:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.MessageBatchBenchmark [messages]
+ *
+ * messages defaults to 20,000 per mode.
+ */
+public class MessageBatchBenchmark {
+
+    private static final int[] BATCH_SIZES = { 10, 100, 1_000 };
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        // every message comes from one account; measure posting, not the per-account write limit
+        System.setProperty("ratelimit.write.perSecond", "0");
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI().start(8080);
+        HttpClient client = HttpClient.newHttpClient();
+        try {
+            // warm up the JIT, the connection pool and the HTTP connection
+            postSingle(client, total / 10);
+            for (int batchSize : BATCH_SIZES) {
+                postBatches(client, total / 10, batchSize);
+            }
+
+            System.out.printf("%12s %12s %14s%n", "mode", "messages", "messages/s");
+            long start = System.nanoTime();
+            postSingle(client, total);
+            System.out.printf("%12s %12d %14.0f%n", "single", total, total / seconds(start));
+            for (int batchSize : BATCH_SIZES) {
+                start = System.nanoTime();
+                postBatches(client, total, batchSize);
+                System.out.printf("%12s %12d %14.0f%n", "batch " + batchSize, total, total / seconds(start));
+            }
+        } finally {
+            app.stop();
+        }
+    }
+
+    private static void postSingle(HttpClient client, int count) throws IOException, InterruptedException {
+        for (int i = 0; i < count; i++) {
+            post(client, "http://localhost:8080/messages", message(i));
+        }
+    }
+
+    private static void postBatches(HttpClient client, int count, int batchSize)
+            throws IOException, InterruptedException {
+        for (int start = 0; start < count; start += batchSize) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = start; i < Math.min(start + batchSize, count); i++) {
+                if (i > start) {
+                    body.append(',');
+                }
+                body.append(message(i));
+            }
+            post(client, "http://localhost:8080/messages/batch", body.append(']').toString());
+        }
+    }
+
+    private static void post(HttpClient client, String uri, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(uri + " answered " + response.statusCode());
+        }
+    }
+
+    private static String message(int i) {
+        return "{\"posted_by\":1,\"message_text\":\"benchmark message number " + i + "\",\"time_posted_epoch\":"
+                + (1_669_947_792L + i) + "}";
+    }
+
+    private static double seconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+}
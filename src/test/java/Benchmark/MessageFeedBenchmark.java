@@ -0,0 +1,156 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Connects many idle subscribers to GET /messages/feed, then posts messages one at a time and measures how long
+ * each takes to reach every subscriber. Also reports the heap and threads the open subscriptions cost the server.
+ * Subscribers are raw non-blocking sockets on one selector, so the client side stays cheap. Each subscriber uses
+ * two file descriptors in this process (client and server end), so raise ulimit -n for large counts. Run
+ * manually, it resets the database and starts the app on port 8080:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.MessageFeedBenchmark [subscribers] [messages]
+ */
+public class MessageFeedBenchmark {
+
+    private static final byte[] EVENT = "event: created".getBytes(StandardCharsets.US_ASCII);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int subscribers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        // every message comes from one account; measure the feed, not the per-account write limit
+        System.setProperty("ratelimit.write.perSecond", "0");
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI().start(8080);
+        HttpClient client = HttpClient.newHttpClient();
+        Selector selector = Selector.open();
+        List<Subscriber> connections = new ArrayList<>(subscribers);
+        try {
+            post(client, 0);
+            long threadsBefore = Thread.activeCount();
+            long heapBefore = usedHeap();
+            byte[] request = "GET /messages/feed HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < subscribers; i++) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", 8080));
+                channel.write(ByteBuffer.wrap(request));
+                channel.configureBlocking(false);
+                Subscriber subscriber = new Subscriber();
+                channel.register(selector, SelectionKey.OP_READ, subscriber);
+                connections.add(subscriber);
+            }
+            // a subscriber is registered with the feed before its headers are sent
+            readUntil(selector, connections, subscriber -> subscriber.bytes > 0);
+            System.out.printf("%d subscribers: %.1f KB of heap per subscriber (both ends), %d more threads%n",
+                    subscribers, (usedHeap() - heapBefore) / 1024.0 / subscribers,
+                    Thread.activeCount() - threadsBefore);
+
+            long[] latencies = new long[messages];
+            for (int i = 0; i < messages; i++) {
+                int expected = i + 1;
+                long start = System.nanoTime();
+                post(client, expected);
+                readUntil(selector, connections, subscriber -> subscriber.events >= expected);
+                latencies[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(latencies);
+            System.out.printf("post to last subscriber: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    latencies[messages / 2] / 1e6, latencies[(int) (messages * 0.99)] / 1e6,
+                    latencies[messages - 1] / 1e6);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+            app.stop();
+        }
+    }
+
+    private static void post(HttpClient client, int i) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"feed message " + i
+                        + "\",\"time_posted_epoch\":" + (1_669_947_792L + i) + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("POST /messages answered " + response.statusCode());
+        }
+    }
+
+    private static void readUntil(Selector selector, List<Subscriber> connections,
+            Predicate<Subscriber> done) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        int remaining = 0;
+        for (Subscriber subscriber : connections) {
+            if (!done.test(subscriber)) {
+                remaining++;
+            }
+        }
+        while (remaining > 0) {
+            selector.select(1000);
+            for (SelectionKey key : selector.selectedKeys()) {
+                Subscriber subscriber = (Subscriber) key.attachment();
+                boolean wasDone = done.test(subscriber);
+                buffer.clear();
+                if (((SocketChannel) key.channel()).read(buffer) < 0) {
+                    throw new IllegalStateException("a subscriber was disconnected");
+                }
+                subscriber.read(buffer.flip());
+                if (!wasDone && done.test(subscriber)) {
+                    remaining--;
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    /**
+     * Counts the "created" events a subscriber has received, across reads that may split them.
+     */
+    private static class Subscriber {
+        private long bytes;
+        private int events;
+        private int matched;
+
+        void read(ByteBuffer data) {
+            bytes += data.remaining();
+            while (data.hasRemaining()) {
+                byte b = data.get();
+                matched = b == EVENT[matched] ? matched + 1 : (b == EVENT[0] ? 1 : 0);
+                if (matched == EVENT.length) {
+                    events++;
+                    matched = 0;
+                }
+            }
+        }
+    }
+}
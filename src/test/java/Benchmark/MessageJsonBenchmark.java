@@ -0,0 +1,66 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import Model.Message;
+import Util.JsonSupport;
+import Util.MessageJsonCache;
+
+/**
+ * Compares encoding messages with Jackson on every request against assembling the response from
+ * MessageJsonCache, for a single message and for a list of messages. Run manually:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.MessageJsonBenchmark [listSize]
+ */
+public class MessageJsonBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) throws JsonProcessingException {
+        int listSize = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        List<Message> messages = new ArrayList<>(listSize);
+        for (int i = 1; i <= listSize; i++) {
+            messages.add(new Message(i, i % 50, "benchmark message number " + i + " with some typical text",
+                    1_669_947_792L + i));
+        }
+        // lists of up to half the cache size are cached
+        MessageJsonCache cache = new MessageJsonCache(listSize * 2);
+        Message single = messages.get(0);
+        int listIterations = Math.max(1, ITERATIONS / listSize);
+
+        long sink = 0;
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += JsonSupport.MESSAGE_WRITER.writeValueAsBytes(single).length;
+            }
+            long encodeSingle = (System.nanoTime() - start) / ITERATIONS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += cache.toJson(single).length;
+            }
+            long cachedSingle = (System.nanoTime() - start) / ITERATIONS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < listIterations; i++) {
+                sink += JsonSupport.MESSAGE_LIST_WRITER.writeValueAsBytes(messages).length;
+            }
+            long encodeList = (System.nanoTime() - start) / listIterations;
+
+            start = System.nanoTime();
+            for (int i = 0; i < listIterations; i++) {
+                sink += cache.toJson(messages).length;
+            }
+            long cachedList = (System.nanoTime() - start) / listIterations;
+
+            System.out.printf("round %d: single encode %dns cached %dns | list of %d encode %dns cached %dns%n",
+                    round, encodeSingle, cachedSingle, listSize, encodeList, cachedList);
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+}
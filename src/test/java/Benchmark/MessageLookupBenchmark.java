@@ -0,0 +1,91 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Measures per-account message lookup latency (MessageDAO.getMessagesByAccountId and one page of
+ * getPageByAccountId) as the message table grows. Lookups target probe accounts that own a fixed number of
+ * messages, so any growth in latency comes from the table size rather than the result size. Run manually, it
+ * resets the database first:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.MessageLookupBenchmark [maxRows]
+ *
+ * maxRows defaults to 1,000,000; pass 10000000 to reproduce the 10M row measurement.
+ */
+public class MessageLookupBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+    private static final int PROBE_ACCOUNTS = 100;
+    private static final int MESSAGES_PER_PROBE = 20;
+    private static final int LOOKUPS = 5_000;
+
+    public static void main(String[] args) {
+        long maxRows = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000L;
+
+        ConnectionUtil.resetTestDatabase();
+        List<Account> accounts = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS + PROBE_ACCOUNTS; i++) {
+            accounts.add(new Account("bench" + i, "password"));
+        }
+        new AccountDAO().insertAll(accounts);
+
+        MessageDAO messageDAO = new MessageDAO();
+        messageDAO.setBatchSize(5_000);
+        Random random = new Random(42);
+        List<Message> probeMessages = new ArrayList<>();
+        for (int probe = 0; probe < PROBE_ACCOUNTS; probe++) {
+            for (int i = 0; i < MESSAGES_PER_PROBE; i++) {
+                probeMessages.add(new Message(ACCOUNTS + 1 + probe, "probe message " + i, 1_600_000_000L + i));
+            }
+        }
+        messageDAO.insertAll(probeMessages);
+        long rows = 1 + probeMessages.size();
+        for (int i = 0; i < LOOKUPS; i++) {
+            // warm up the JIT and statement caches before the first measurement
+            messageDAO.getMessagesByAccountId(ACCOUNTS + 1 + random.nextInt(PROBE_ACCOUNTS));
+        }
+        System.out.printf("%12s %16s %16s %16s %16s%n", "rows", "byAccount p50us", "byAccount p99us",
+                "page p50us", "page p99us");
+        for (long target = 10_000; target <= maxRows; target *= 10) {
+            while (rows < target) {
+                int chunk = (int) Math.min(50_000, target - rows);
+                List<Message> messages = new ArrayList<>(chunk);
+                for (int i = 0; i < chunk; i++) {
+                    messages.add(new Message(1 + random.nextInt(ACCOUNTS), "benchmark message " + rows + i,
+                            1_600_000_000L + random.nextInt(100_000_000)));
+                }
+                messageDAO.insertAll(messages);
+                rows += chunk;
+            }
+
+            long[] byAccount = new long[LOOKUPS];
+            long[] page = new long[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                int accountId = ACCOUNTS + 1 + random.nextInt(PROBE_ACCOUNTS);
+                long start = System.nanoTime();
+                messageDAO.getMessagesByAccountId(accountId);
+                byAccount[i] = System.nanoTime() - start;
+                start = System.nanoTime();
+                messageDAO.getPageByAccountId(accountId, Long.MIN_VALUE, 0, 20);
+                page[i] = System.nanoTime() - start;
+            }
+            System.out.printf("%12d %16d %16d %16d %16d%n", rows, percentile(byAccount, 50),
+                    percentile(byAccount, 99), percentile(page, 50), percentile(page, 99));
+        }
+    }
+
+    static long percentile(long[] nanos, int percentile) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1_000;
+    }
+}
@@ -0,0 +1,104 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.ChangeSet;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Compares what a client pays to catch up on a few changes: fetching GET /messages again against
+ * GET /messages/changes since its last cursor, at several table sizes. Between fetches the benchmark writes a
+ * handful of messages directly through MessageDAO. Run manually, it resets the database and starts the app on
+ * port 8080:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.MessageSyncBenchmark [rounds]
+ */
+public class MessageSyncBenchmark {
+
+    private static final int[] TABLE_SIZES = { 1_000, 10_000, 100_000 };
+    private static final int CHANGES_PER_ROUND = 10;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        ObjectMapper mapper = new ObjectMapper();
+
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO messageDAO = new MessageDAO();
+        messageDAO.setBatchSize(5_000);
+        Javalin app = new SocialMediaController().startAPI().start(8080);
+        HttpClient client = HttpClient.newHttpClient();
+        try {
+            System.out.printf("%10s %16s %16s %14s %14s%n", "messages", "full ms/round", "changes ms/round",
+                    "full bytes", "changes bytes");
+            int size = 1;
+            for (int tableSize : TABLE_SIZES) {
+                messageDAO.insertAll(messages(tableSize - size, size));
+                size = tableSize;
+                long since = mapper.readValue(get(client, "/messages/changes?since=0&limit=1").body(),
+                        ChangeSet.class).getNext_since();
+                // bring the cursor up to date, then time both ways of catching up on the same changes
+                since = catchUp(client, mapper, since);
+                long fullNanos = 0;
+                long changesNanos = 0;
+                long fullBytes = 0;
+                long changesBytes = 0;
+                for (int round = 0; round < rounds; round++) {
+                    messageDAO.insertAll(messages(CHANGES_PER_ROUND, size));
+                    size += CHANGES_PER_ROUND;
+                    long start = System.nanoTime();
+                    fullBytes += get(client, "/messages").body().length();
+                    fullNanos += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    HttpResponse<String> response = get(client, "/messages/changes?since=" + since);
+                    changesNanos += System.nanoTime() - start;
+                    changesBytes += response.body().length();
+                    since = mapper.readValue(response.body(), ChangeSet.class).getNext_since();
+                }
+                System.out.printf("%10d %16.2f %16.2f %14d %14d%n", tableSize, fullNanos / 1e6 / rounds,
+                        changesNanos / 1e6 / rounds, fullBytes / rounds, changesBytes / rounds);
+            }
+        } finally {
+            app.stop();
+        }
+    }
+
+    private static long catchUp(HttpClient client, ObjectMapper mapper, long since)
+            throws IOException, InterruptedException {
+        ChangeSet changes;
+        do {
+            changes = mapper.readValue(get(client, "/messages/changes?limit=1000&since=" + since).body(),
+                    ChangeSet.class);
+            since = changes.getNext_since();
+        } while (changes.isHas_more());
+        return since;
+    }
+
+    private static List<Message> messages(int count, int offset) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(new Message(1, "sync benchmark message " + (offset + i), 1_669_947_792L + offset + i));
+        }
+        return messages;
+    }
+
+    private static HttpResponse<String> get(HttpClient client, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(path + " answered " + response.statusCode());
+        }
+        return response;
+    }
+}
@@ -0,0 +1,77 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Compares, at the DAO level and so without any cache in front, updating and deleting a message the way the
+ * service used to (read it, then write every column or delete it) with the single-statement updateText and
+ * deleteById. Run manually, it resets the database:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.MessageWriteBenchmark [messages]
+ */
+public class MessageWriteBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        MessageDAO messageDAO = new MessageDAO();
+        messageDAO.setBatchSize(5_000);
+
+        System.out.printf("%16s %14s %14s%n", "operation", "read + write", "one statement");
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT and h2
+            ConnectionUtil.resetTestDatabase();
+            List<Message> messages = messageDAO.insertAll(messages(count));
+
+            long start = System.nanoTime();
+            for (Message message : messages) {
+                Message current = messageDAO.getById(message.getMessage_id()).get();
+                messageDAO.update(new Message(current.getMessage_id(), current.getPosted_by(), "edited once",
+                        current.getTime_posted_epoch()));
+            }
+            double readAndUpdate = perSecond(count, start);
+            start = System.nanoTime();
+            for (Message message : messages) {
+                messageDAO.updateText(message.getMessage_id(), "edited twice", updated -> {
+                });
+            }
+            double updateText = perSecond(count, start);
+
+            List<Message> half = messages.subList(0, count / 2);
+            start = System.nanoTime();
+            for (Message message : half) {
+                Optional<Message> current = messageDAO.getById(message.getMessage_id());
+                messageDAO.delete(current.get());
+            }
+            double readAndDelete = perSecond(half.size(), start);
+            start = System.nanoTime();
+            for (Message message : messages.subList(count / 2, count)) {
+                messageDAO.deleteById(message.getMessage_id(), deleted -> {
+                });
+            }
+            double deleteById = perSecond(count - half.size(), start);
+
+            if (round == 1) {
+                System.out.printf("%16s %14.0f %14.0f%n", "update/s", readAndUpdate, updateText);
+                System.out.printf("%16s %14.0f %14.0f%n", "delete/s", readAndDelete, deleteById);
+            }
+        }
+    }
+
+    private static List<Message> messages(int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(new Message(1, "write benchmark message " + i, 1_669_947_792L + i));
+        }
+        return messages;
+    }
+
+    private static double perSecond(int operations, long startNanos) {
+        return operations / ((System.nanoTime() - startNanos) / 1e9);
+    }
+}
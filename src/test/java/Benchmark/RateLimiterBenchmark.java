@@ -0,0 +1,63 @@
+package Benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Util.RateLimiter;
+
+/**
+ * Measures the cost of RateLimiter.tryAcquire per call, on one thread and on several threads at once, spread over
+ * a given number of accounts. The rate is high enough that calls are always allowed, so every call updates its
+ * bucket. Run manually:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.RateLimiterBenchmark [threads]
+ */
+public class RateLimiterBenchmark {
+
+    private static final int[] ACCOUNTS = { 1, 1_000, 100_000 };
+    private static final int CALLS_PER_THREAD = 5_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%10s %8s %12s%n", "accounts", "threads", "ns/call");
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT
+            for (int accounts : ACCOUNTS) {
+                for (int threadCount : new int[] { 1, threads }) {
+                    double nanos = run(accounts, threadCount);
+                    if (round == 1) {
+                        System.out.printf("%10d %8d %12.1f%n", accounts, threadCount, nanos);
+                    }
+                }
+            }
+        }
+    }
+
+    private static double run(int accounts, int threadCount) throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1e9, Integer.MAX_VALUE, 60_000, Integer.MAX_VALUE);
+        CountDownLatch done = new CountDownLatch(threadCount);
+        AtomicLong rejected = new AtomicLong();
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t * 7919;
+            new Thread(() -> {
+                long refused = 0;
+                for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                    if (limiter.tryAcquire((i + offset) % accounts) != 0) {
+                        refused++;
+                    }
+                }
+                rejected.addAndGet(refused);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (rejected.get() > 0) {
+            throw new IllegalStateException(rejected.get() + " calls were refused");
+        }
+        // wall time per call on each thread
+        return (double) elapsed / CALLS_PER_THREAD;
+    }
+}
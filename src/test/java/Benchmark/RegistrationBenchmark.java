@@ -0,0 +1,100 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import DAO.AccountDAO;
+import DAO.DuplicateKeyException;
+import Model.Account;
+import Util.ConnectionUtil;
+
+/**
+ * Compares, at the DAO level and so without any cache in front, registering accounts the way the service used to
+ * (ask whether the username exists, then insert) with a single INSERT that leaves uniqueness to the constraint on
+ * account.username. Measures both fresh usernames and usernames that are already taken. Run manually, it resets
+ * the database:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.RegistrationBenchmark [accounts]
+ */
+public class RegistrationBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        AccountDAO accountDAO = new AccountDAO();
+
+        System.out.printf("%16s %14s %14s%n", "registration", "check + insert", "insert only");
+        for (int round = 0; round < 2; round++) {
+            // the first round warms up the JIT and h2
+            ConnectionUtil.resetTestDatabase();
+            List<Account> checked = accounts("checked", count);
+            List<Account> unchecked = accounts("unchecked", count);
+
+            long start = System.nanoTime();
+            int rejected = 0;
+            for (Account account : checked) {
+                rejected += checkThenInsert(accountDAO, account);
+            }
+            double checkAndInsertFresh = perSecond(count, start);
+            start = System.nanoTime();
+            for (Account account : unchecked) {
+                rejected += insertOnly(accountDAO, account);
+            }
+            double insertFresh = perSecond(count, start);
+
+            start = System.nanoTime();
+            for (Account account : checked) {
+                rejected -= checkThenInsert(accountDAO, account);
+            }
+            double checkAndInsertTaken = perSecond(count, start);
+            start = System.nanoTime();
+            for (Account account : unchecked) {
+                rejected -= insertOnly(accountDAO, account);
+            }
+            double insertTaken = perSecond(count, start);
+
+            if (rejected != -2 * count) {
+                throw new IllegalStateException("expected every fresh username to be accepted and every taken one"
+                        + " rejected");
+            }
+            if (round == 1) {
+                System.out.printf("%16s %14.0f %14.0f%n", "fresh/s", checkAndInsertFresh, insertFresh);
+                System.out.printf("%16s %14.0f %14.0f%n", "taken/s", checkAndInsertTaken, insertTaken);
+            }
+        }
+    }
+
+    /**
+     * @return 1 if the username was taken
+     */
+    private static int checkThenInsert(AccountDAO accountDAO, Account account) {
+        if (accountDAO.doesUsernameExists(account.getUsername())) {
+            return 1;
+        }
+        accountDAO.insert(account);
+        return 0;
+    }
+
+    /**
+     * @return 1 if the username was taken
+     */
+    private static int insertOnly(AccountDAO accountDAO, Account account) {
+        try {
+            accountDAO.insert(account);
+            return 0;
+        } catch (DuplicateKeyException e) {
+            return 1;
+        }
+    }
+
+    private static List<Account> accounts(String prefix, int count) {
+        List<Account> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            accounts.add(new Account(prefix + i, "password"));
+        }
+        return accounts;
+    }
+
+    private static double perSecond(int operations, long startNanos) {
+        return operations / ((System.nanoTime() - startNanos) / 1e9);
+    }
+}
@@ -0,0 +1,134 @@
+package Benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.VirtualThreads;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Compares throughput and latency of the app with requests on Jetty's platform thread pool and on virtual threads
+ * (-Dhttp.virtualThreads=true), at several numbers of concurrent clients. Every request reads a page of an
+ * account's messages, so every handler blocks on JDBC. Virtual threads need Java 21; on older runtimes the
+ * virtual mode runs on the platform pool and the two rows should match. Run manually, it resets the database and
+ * starts the app on port 8080:
+ *
+ *   java -cp target/classes:target/test-classes:... Benchmark.ThreadModeLoadTest [seconds per run]
+ */
+public class ThreadModeLoadTest {
+
+    private static final int ACCOUNTS = 1_000;
+    private static final int MESSAGES_PER_ACCOUNT = 50;
+    private static final int[] CONCURRENCY = { 50, 500, 2_000 };
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        ConnectionUtil.resetTestDatabase();
+        List<Account> accounts = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(new Account("load" + i, "password"));
+        }
+        new AccountDAO().insertAll(accounts);
+        List<Message> messages = new ArrayList<>(ACCOUNTS * MESSAGES_PER_ACCOUNT);
+        for (int i = 0; i < ACCOUNTS * MESSAGES_PER_ACCOUNT; i++) {
+            messages.add(new Message(2 + i % ACCOUNTS, "load test message " + i, 1_669_947_792L + i));
+        }
+        MessageDAO messageDAO = new MessageDAO();
+        messageDAO.setBatchSize(5_000);
+        messageDAO.insertAll(messages);
+
+        System.out.println("virtual threads supported by this runtime: " + VirtualThreads.areSupported());
+        System.out.printf("%10s %12s %12s %10s %10s %8s%n", "mode", "concurrency", "requests/s", "p50 ms",
+                "p99 ms", "errors");
+        for (boolean virtual : new boolean[] { false, true }) {
+            System.setProperty("http.virtualThreads", String.valueOf(virtual));
+            Javalin app = new SocialMediaController().startAPI().start(8080);
+            try {
+                // warm up the JIT, the caches and the connection pool
+                run(CONCURRENCY[0], seconds);
+                for (int concurrency : CONCURRENCY) {
+                    Result result = run(concurrency, seconds);
+                    System.out.printf("%10s %12d %12.0f %10.2f %10.2f %8d%n", virtual ? "virtual" : "platform",
+                            concurrency, result.requests / (double) seconds, result.percentile(0.50),
+                            result.percentile(0.99), result.errors);
+                }
+            } finally {
+                app.stop();
+            }
+        }
+    }
+
+    /**
+     * Keeps the given number of requests in flight for the given time.
+     */
+    private static Result run(int concurrency, int seconds) throws InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicLong sequence = new AtomicLong();
+        long[] latencies = new long[4_000_000];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < deadline) {
+            if (!inFlight.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            int accountId = 2 + (int) (sequence.getAndIncrement() % ACCOUNTS);
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/accounts/" + accountId + "/messages?limit=20"))
+                    .build();
+            long start = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (error != null || response.statusCode() != 200) {
+                    errors.incrementAndGet();
+                } else {
+                    int index = completed.getAndIncrement();
+                    if (index < latencies.length) {
+                        latencies[index] = System.nanoTime() - start;
+                    }
+                }
+                inFlight.release();
+            });
+        }
+        inFlight.acquire(concurrency);
+        int count = Math.min(completed.get(), latencies.length);
+        return new Result(completed.get(), errors.get(), Arrays.copyOf(latencies, count));
+    }
+
+    private static class Result {
+        private final int requests;
+        private final int errors;
+        private final long[] latencies;
+
+        Result(int requests, int errors, long[] latencies) {
+            this.requests = requests;
+            this.errors = errors;
+            this.latencies = latencies;
+            Arrays.sort(latencies);
+        }
+
+        double percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            return latencies[(int) Math.min(latencies.length - 1, p * latencies.length)] / 1e6;
+        }
+    }
+}
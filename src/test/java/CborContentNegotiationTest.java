@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CborContentNegotiationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper cborMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and a CBOR
+     * ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        cborMapper = new ObjectMapper(new CBORFactory());
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/register with a CBOR body, accepting CBOR
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: CBOR representation of the new account
+     */
+    @Test
+    public void registerUserWithCbor() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(
+                        cborMapper.writeValueAsBytes(new Account("user", "password"))))
+                .header("Content-Type", "application/cbor")
+                .header("Accept", "application/cbor")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/cbor", response.headers().firstValue("Content-Type").orElseThrow());
+        Account expectedAccount = new Account(2, "user", "password");
+        Assert.assertEquals(expectedAccount, cborMapper.readValue(response.body(), Account.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 accepting CBOR before JSON
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: CBOR representation of the message
+     */
+    @Test
+    public void getMessageByIdAsCbor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .header("Accept", "application/cbor, application/json;q=0.5")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Message expectedResult = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expectedResult, cborMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 listing CBOR first but with q=0
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the message, as q=0 means not acceptable
+     */
+    @Test
+    public void cborWithQualityZeroIsNotChosen() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .header("Accept", "application/cbor;q=0, application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+        Message expectedResult = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expectedResult, new ObjectMapper().readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 listing JSON first with q=0.1, then CBOR
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: CBOR representation of the message, as its implied q=1 is higher
+     */
+    @Test
+    public void higherQualityWinsOverOrder() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .header("Accept", "application/json;q=0.1, application/cbor")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Message expectedResult = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expectedResult, cborMapper.readValue(response.body(), Message.class));
+    }
+
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 again with the ETag of the first response, then after a PATCH
+     * 
+     * Expected Response:
+     *  Status Code: 304 with an empty body while unchanged, 200 with the updated message afterwards
+     */
+    @Test
+    public void getMessageByIdHonorsIfNoneMatch() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("http://localhost:8080/messages/1", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> unchanged = get("http://localhost:8080/messages/1", etag);
+        Assert.assertEquals(304, unchanged.statusCode());
+        Assert.assertEquals("", unchanged.body());
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> changed = get("http://localhost:8080/messages/1", etag);
+        Assert.assertEquals(200, changed.statusCode());
+        Assert.assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+        Message expectedResult = new Message(1, 1, "updated message", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(changed.body(), Message.class));
+    }
+
+    /**
+     * Sending GET localhost:8080/accounts/1/messages again with the ETag of the first response, then after a POST
+     * 
+     * Expected Response:
+     *  Status Code: 304 while unchanged, 200 once the account posted a new message
+     */
+    @Test
+    public void getMessagesByAccountIdHonorsIfNoneMatch() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("http://localhost:8080/accounts/1/messages", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        Assert.assertEquals(304, get("http://localhost:8080/accounts/1/messages", etag).statusCode());
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(200, get("http://localhost:8080/accounts/1/messages", etag).statusCode());
+    }
+
+    /**
+     * Reading account 1's messages at its current version, where the query reads the list and then stalls; a
+     * message is posted meanwhile, and the list is read again at the new version
+     *
+     * Expected: the second read does not share the stalled query, which started before the post, and sees the
+     * new message
+     */
+    @Test
+    public void readsAfterAWriteDoNotShareAnOlderQuery() throws Exception {
+        StalledListDAO messageDao = new StalledListDAO();
+        MessageService messageService = new MessageService(messageDao);
+        ExecutorService readers = Executors.newCachedThreadPool();
+        try {
+            long before = messageService.getAccountMessagesVersion(1);
+            Future<List<Message>> stale = readers.submit(() -> messageService.getMessagesByAccountId(1, before));
+            Assert.assertTrue(messageDao.stalled.await(5, TimeUnit.SECONDS));
+
+            messageService.createMessage(new Message(1, "hello message", 1669947792),
+                    Optional.of(new Account(1, "testuser1", "password")));
+            long after = messageService.getAccountMessagesVersion(1);
+            Assert.assertNotEquals(before, after);
+            Future<List<Message>> fresh = readers.submit(() -> messageService.getMessagesByAccountId(1, after));
+
+            Assert.assertEquals(2, fresh.get(5, TimeUnit.SECONDS).size());
+            messageDao.release.countDown();
+            Assert.assertEquals(1, stale.get(5, TimeUnit.SECONDS).size());
+        } finally {
+            messageDao.release.countDown();
+            readers.shutdownNow();
+            messageService.close();
+        }
+    }
+
+    /**
+     * Holds the first list query after it has read its rows, until released.
+     */
+    private static class StalledListDAO extends MessageDAO {
+        private final CountDownLatch stalled = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public List<Message> getMessagesByAccountId(int accountId) {
+            List<Message> messages = super.getMessagesByAccountId(accountId);
+            if (stalled.getCount() > 0) {
+                stalled.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return messages;
+        }
+    }
+
+    private HttpResponse<String> get(String uri, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create(uri));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+}
@@ -0,0 +1,233 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a data source for a fresh in-memory database.
+     */
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pool" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Borrowing three connections from a pool of at most two, then returning one
+     *
+     * Expected: the third borrow times out after the acquire timeout without opening a connection, and succeeds
+     * on the returned connection once one is back
+     */
+    @Test
+    public void poolIsBoundedAndBorrowersTimeOut() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 2, 200, 0, 0, 0);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        long start = System.nanoTime();
+        try {
+            pool.getConnection();
+            Assert.fail("expected the third borrow to time out");
+        } catch (SQLTransientConnectionException e) {
+            // expected
+        }
+        Assert.assertTrue((System.nanoTime() - start) / 1_000_000 >= 190);
+        Assert.assertEquals(1, pool.getAcquireTimeouts());
+        Assert.assertEquals(2, pool.getTotalConnections());
+
+        first.close();
+        try (Connection third = pool.getConnection()) {
+            Assert.assertEquals(2, pool.getTotalConnections());
+            Assert.assertEquals(2, pool.getActiveConnections());
+        }
+        second.close();
+        Assert.assertEquals(0, pool.getActiveConnections());
+        Assert.assertEquals(2, pool.getIdleConnections());
+    }
+
+    /**
+     * Borrowing a connection, changing its read-only flag, isolation level and auto-commit, returning it and
+     * borrowing it again
+     *
+     * Expected: the connection comes back with the settings it was opened with
+     */
+    @Test
+    public void returnedConnectionsAreReset() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 1000, 0, 0, 0);
+        int defaultIsolation;
+        try (Connection conn = pool.getConnection()) {
+            defaultIsolation = conn.getTransactionIsolation();
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        }
+        try (Connection conn = pool.getConnection()) {
+            Assert.assertEquals(1, pool.getTotalConnections());
+            Assert.assertTrue(conn.getAutoCommit());
+            Assert.assertFalse(conn.isReadOnly());
+            Assert.assertEquals(defaultIsolation, conn.getTransactionIsolation());
+        }
+    }
+
+    /**
+     * Closing the physical connection behind an idle pooled one, then borrowing
+     *
+     * Expected: validation finds the dead connection, which is discarded, and a working one is opened instead
+     */
+    @Test
+    public void idleConnectionsAreValidatedOnBorrow() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 1000, 0, 0, 0);
+        Connection physical;
+        try (Connection conn = pool.getConnection()) {
+            physical = conn.unwrap(Connection.class);
+        }
+        physical.close();
+        try (Connection conn = pool.getConnection()) {
+            Assert.assertTrue(conn.isValid(1));
+            Assert.assertNotSame(physical, conn.unwrap(Connection.class));
+            Assert.assertEquals(1, pool.getTotalConnections());
+        }
+    }
+
+    /**
+     * Returning two connections to a pool with a one second idle timeout and no minimum, then waiting
+     *
+     * Expected: both are closed by the housekeeper
+     */
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception {
+        pool = new ConnectionPool(dataSource, 0, 2, 1000, 1000, 0, 0);
+        pool.getConnection().close();
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            Assert.assertEquals(2, pool.getTotalConnections());
+        }
+        Assert.assertEquals(2, pool.getIdleConnections());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getTotalConnections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        Assert.assertEquals(0, pool.getTotalConnections());
+        Assert.assertEquals(0, pool.getIdleConnections());
+    }
+
+    /**
+     * Holding a connection for longer than the leak detection threshold, and another for less
+     *
+     * Expected: only the first is counted as a possible leak
+     */
+    @Test
+    public void connectionsHeldTooLongAreReportedAsLeaks() throws Exception {
+        pool = new ConnectionPool(dataSource, 0, 1, 1000, 0, 100, 0);
+        try (Connection conn = pool.getConnection()) {
+            Thread.sleep(400);
+        }
+        Assert.assertEquals(1, pool.getLeaksDetected());
+        try (Connection conn = pool.getConnection()) {
+            Assert.assertTrue(conn.isValid(1));
+        }
+        Thread.sleep(300);
+        Assert.assertEquals(1, pool.getLeaksDetected());
+    }
+
+    /**
+     * Preparing the same SQL twice in turn on one connection, then twice while the first is still open
+     *
+     * Expected: the second prepare reuses the cached statement, and a nested one gets a statement of its own
+     */
+    @Test
+    public void preparedStatementsAreReused() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 1000, 0, 0, 10);
+        try (Connection conn = pool.getConnection()) {
+            PreparedStatement physical;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT 1")) {
+                physical = ps.unwrap(PreparedStatement.class);
+            }
+            Assert.assertEquals(0, pool.getStatementCacheHits());
+            Assert.assertEquals(1, pool.getStatementCacheMisses());
+            try (PreparedStatement ps = conn.prepareStatement("SELECT 1");
+                    PreparedStatement nested = conn.prepareStatement("SELECT 1")) {
+                Assert.assertSame(physical, ps.unwrap(PreparedStatement.class));
+                Assert.assertNotSame(physical, nested.unwrap(PreparedStatement.class));
+            }
+            Assert.assertEquals(1, pool.getStatementCacheHits());
+            Assert.assertEquals(2, pool.getStatementCacheMisses());
+        }
+    }
+
+    /**
+     * Changing the max rows, fetch size and query timeout of a cached statement, closing it and preparing the
+     * same SQL again
+     *
+     * Expected: the statement is reused with its original settings, so the query returns every row
+     */
+    @Test
+    public void reusedStatementsHaveTheirSettingsReset() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 1000, 0, 0, 10);
+        String sql = "SELECT x FROM SYSTEM_RANGE(1, 3)";
+        try (Connection conn = pool.getConnection()) {
+            int defaultFetchSize;
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                defaultFetchSize = ps.getFetchSize();
+                ps.setFetchSize(defaultFetchSize + 1);
+                ps.setMaxRows(1);
+                ps.setQueryTimeout(5);
+            }
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                Assert.assertEquals(1, pool.getStatementCacheHits());
+                Assert.assertEquals(0, ps.getMaxRows());
+                Assert.assertEquals(defaultFetchSize, ps.getFetchSize());
+                Assert.assertEquals(0, ps.getQueryTimeout());
+                int rows = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                    }
+                }
+                Assert.assertEquals(3, rows);
+            }
+        }
+    }
+
+    /**
+     * Setting the cursor name of a cached statement, which cannot be put back, closing it and preparing the same
+     * SQL again
+     *
+     * Expected: the statement is closed rather than reused, and a new one is prepared
+     */
+    @Test
+    public void statementsThatCannotBeResetAreNotReused() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 1000, 0, 0, 10);
+        try (Connection conn = pool.getConnection()) {
+            PreparedStatement physical;
+            try (PreparedStatement ps = conn.prepareStatement("SELECT 1")) {
+                physical = ps.unwrap(PreparedStatement.class);
+                ps.setCursorName("c");
+            }
+            Assert.assertTrue(physical.isClosed());
+            try (PreparedStatement ps = conn.prepareStatement("SELECT 1")) {
+                Assert.assertNotSame(physical, ps.unwrap(PreparedStatement.class));
+                Assert.assertEquals(0, pool.getStatementCacheHits());
+                Assert.assertEquals(2, pool.getStatementCacheMisses());
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.LruCache;
+
+public class LruCacheTest {
+    ExecutorService readers = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        readers.shutdownNow();
+    }
+
+    /**
+     * Two readers missing the same key while the first one's load is still running
+     *
+     * Expected: the loader runs once and both readers get its value, which is cached
+     */
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>(10, 0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = readers.submit(() -> cache.get(1, key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "loaded";
+        }));
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Future<String> second = readers.submit(() -> cache.get(1, key -> {
+            loads.incrementAndGet();
+            return "loaded again";
+        }));
+        Thread.sleep(100);
+        release.countDown();
+
+        Assert.assertEquals("loaded", first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("loaded", second.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals("loaded", cache.get(1));
+    }
+
+    /**
+     * A reader missing a key after it was invalidated, while a load that started before the invalidation is still
+     * running
+     *
+     * Expected: the later reader runs its own load instead of waiting for the old one, and its value is what stays
+     * cached once the old load finishes
+     */
+    @Test
+    public void readersAfterAnInvalidationDoNotJoinAnOlderLoad() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>(10, 0);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> stale = readers.submit(() -> cache.get(1, key -> {
+            loading.countDown();
+            await(release);
+            return "before the write";
+        }));
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.invalidate(1);
+
+        Future<String> fresh = readers.submit(() -> cache.get(1, key -> "after the write"));
+        Assert.assertEquals("after the write", fresh.get(5, TimeUnit.SECONDS));
+        release.countDown();
+        Assert.assertEquals("before the write", stale.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("after the write", cache.get(1));
+    }
+
+    /**
+     * A reader waiting for a load that fails
+     *
+     * Expected: it gets the loader's exception, and nothing is cached
+     */
+    @Test
+    public void readersWaitingForAFailedLoadGetItsException() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>(10, 0);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = readers.submit(() -> cache.get(1, key -> {
+            loading.countDown();
+            await(release);
+            throw new IllegalStateException("database down");
+        }));
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Future<String> second = readers.submit(() -> cache.get(1, key -> "loaded"));
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<String> reader : Arrays.asList(first, second)) {
+            try {
+                reader.get(5, TimeUnit.SECONDS);
+                Assert.fail("expected the load to fail");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+        Assert.assertNull(cache.get(1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
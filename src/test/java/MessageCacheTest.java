@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Service.UnauthorizedException;
+import Util.ConnectionUtil;
+import Util.LruCache;
+import io.javalin.Javalin;
+
+public class MessageCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1, which caches it, then DELETE
+     * localhost:8080/messages/1 and GET localhost:8080/messages/1 again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: empty for the second GET; the deleted message is not served from the cache
+     */
+    @Test
+    public void deletedMessageIsNotServedFromCache() throws IOException, InterruptedException {
+        HttpRequest getMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> before = webClient.send(getMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertTrue(before.body(), before.body().contains("\"test message 1\""));
+
+        HttpRequest deleteMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> after = webClient.send(getMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, after.statusCode());
+        Assert.assertEquals("", after.body());
+    }
+
+    /**
+     * Updating message 1, while a delete of it commits after the update but reaches the cache before it
+     *
+     * Expected: the message is not found afterwards
+     */
+    @Test
+    public void writesReachingTheCacheOutOfOrderLeaveNoStaleEntry() {
+        DelayedUpdateDAO messageDao = new DelayedUpdateDAO();
+        MessageService messageService = new MessageService(messageDao);
+        Assert.assertTrue(messageService.getMessageById(1).isPresent());
+        messageDao.afterUpdate = updated -> messageService.deleteMessageById(1, deleted -> {
+        });
+
+        messageService.updateMessageText(1, "updated message", updated -> {
+        });
+        try {
+            messageService.getMessageById(1);
+            Assert.fail("the deleted message was served from the cache");
+        } catch (UnauthorizedException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Reading message 1 twice, then message 99, which does not exist, twice, then both at once
+     *
+     * Expected: each message is read from the database once; the repeats, including the missing one, are cache
+     * hits
+     */
+    @Test
+    public void lookupsAreCachedIncludingMissingMessages() {
+        MessageService messageService = new MessageService(new MessageDAO());
+        LruCache<Integer, Optional<Message>> cache = messageService.getMessageCache();
+        messageService.getMessageById(1);
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        messageService.getMessageById(1);
+        Assert.assertEquals(1, cache.getHits());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                messageService.getMessageById(99);
+                Assert.fail("message 99 does not exist");
+            } catch (UnauthorizedException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+
+        Assert.assertEquals(Arrays.asList(99), messageService.getMessagesByIds(Arrays.asList(1, 99))
+                .getMissing_ids());
+        Assert.assertEquals(4, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    /**
+     * Lets a test run a write after an update has committed but before the service sees its result.
+     */
+    private static class DelayedUpdateDAO extends MessageDAO {
+        private Consumer<Message> afterUpdate = updated -> {
+        };
+
+        @Override
+        public Optional<Message> updateText(int messageId, String messageText, Consumer<Message> beforeCommit) {
+            Optional<Message> updated = super.updateText(messageId, messageText, beforeCommit);
+            updated.ifPresent(afterUpdate);
+            return updated;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.ChangeSet;
+import Model.MessageChange;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageChangesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes, then, after editing message 1, posting
+     * message 2 and deleting message 1, to GET localhost:8080/messages/changes?since={next_since} twice
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: first message 1; then message 2 and the deletion of message 1, in that order; then nothing,
+     *  with the same cursor
+     */
+    @Test
+    public void changesSinceCursor() throws IOException, InterruptedException {
+        ChangeSet full = sync(0);
+        Assert.assertEquals(1, full.getChanges().size());
+        Assert.assertEquals(1, full.getChanges().get(0).getMessage().getMessage_id());
+        Assert.assertFalse(full.isHas_more());
+
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json"));
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json"));
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE());
+
+        ChangeSet delta = sync(full.getNext_since());
+        Assert.assertEquals(2, delta.getChanges().size());
+        MessageChange created = delta.getChanges().get(0);
+        MessageChange deleted = delta.getChanges().get(1);
+        Assert.assertFalse(created.isDeleted());
+        Assert.assertEquals(2, created.getMessage().getMessage_id());
+        Assert.assertEquals("hello message", created.getMessage().getMessage_text());
+        Assert.assertTrue(deleted.isDeleted());
+        Assert.assertEquals(1, deleted.getMessage().getMessage_id());
+        Assert.assertTrue(created.getChange_seq() < deleted.getChange_seq());
+        Assert.assertEquals(deleted.getChange_seq(), delta.getNext_since());
+
+        ChangeSet empty = sync(delta.getNext_since());
+        Assert.assertTrue(empty.getChanges().isEmpty());
+        Assert.assertEquals(delta.getNext_since(), empty.getNext_since());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes?since=-1 and ?since=abc
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void changesWithInvalidSince() throws IOException, InterruptedException {
+        for (String since : new String[] { "-1", "abc" }) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/changes?since=" + since))
+                    .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(400, response.statusCode());
+        }
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with five messages, then to GET
+     * localhost:8080/messages/changes?limit=2 and on with each next_since until has_more is false
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message exactly once, in change order, two per page, with has_more set on every page
+     *  but the last
+     */
+    @Test
+    public void changesArePagedByLimit() throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 5; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"posted_by\":1, \"message_text\": \"message ").append(i)
+                    .append("\", \"time_posted_epoch\": 1669947792}");
+        }
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+                .header("Content-Type", "application/json"));
+
+        List<Integer> messageIds = new ArrayList<>();
+        List<Boolean> hasMore = new ArrayList<>();
+        long since = 0;
+        do {
+            ChangeSet page = sync(since, 2);
+            Assert.assertTrue(page.getChanges().size() <= 2);
+            for (MessageChange change : page.getChanges()) {
+                messageIds.add(change.getMessage().getMessage_id());
+            }
+            hasMore.add(page.isHas_more());
+            since = page.getNext_since();
+        } while (hasMore.get(hasMore.size() - 1));
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), messageIds);
+        Assert.assertEquals(Arrays.asList(true, true, false), hasMore);
+        Assert.assertTrue(sync(since, 2).getChanges().isEmpty());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes?since={a cursor past every change}
+     *
+     * Expected Response:
+     *  Status Code: 410
+     */
+    @Test
+    public void changesSinceCursorAheadOfLog() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=" + Long.MAX_VALUE))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(410, response.statusCode());
+    }
+
+    private ChangeSet sync(long since) throws IOException, InterruptedException {
+        return sync(since, MessageService.DEFAULT_PAGE_SIZE);
+    }
+
+    private ChangeSet sync(long since, int limit) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=" + since + "&limit=" + limit))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), ChangeSet.class);
+    }
+
+    private void send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
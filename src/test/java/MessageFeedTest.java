@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageFeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/feed?posted_by=1, then PATCH localhost:8080/messages/1
+     * and DELETE localhost:8080/messages/1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: an "updated" event, then a "deleted" event, each with the message as data
+     */
+    @Test
+    public void feedStreamsChangesToAccountMessages() throws Exception {
+        HttpRequest feedRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/feed?posted_by=1"))
+                .build();
+        HttpResponse<Stream<String>> feed = webClient.sendAsync(feedRequest, HttpResponse.BodyHandlers.ofLines())
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(200, feed.statusCode());
+        Assert.assertTrue(feed.headers().firstValue("Content-Type").orElse("").startsWith("text/event-stream"));
+        Iterator<String> lines = feed.body().iterator();
+
+        HttpRequest patchMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest deleteMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals("event: updated", nextEventLine(lines));
+        String data = nextEventLine(lines);
+        Assert.assertTrue(data, data.startsWith("data: {\"message_id\":1,") && data.contains("updated message"));
+        Assert.assertEquals("event: deleted", nextEventLine(lines));
+        Assert.assertTrue(nextEventLine(lines).startsWith("data: {\"message_id\":1,"));
+        feed.body().close();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/feed?posted_by=abc
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void feedWithInvalidPostedBy() throws IOException, InterruptedException {
+        HttpRequest feedRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/feed?posted_by=abc"))
+                .build();
+        HttpResponse<String> response = webClient.send(feedRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/feed, then stopping the app
+     *
+     * Expected Response:
+     *  Status Code: 200, and the feed thread the subscription started is gone once the app has stopped
+     */
+    @Test
+    public void stoppingTheAppStopsTheFeedThread() throws Exception {
+        long threadsBefore = feedThreads();
+        HttpRequest feedRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/feed"))
+                .build();
+        HttpResponse<Stream<String>> feed = webClient.sendAsync(feedRequest, HttpResponse.BodyHandlers.ofLines())
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(200, feed.statusCode());
+        Assert.assertEquals(threadsBefore + 1, feedThreads());
+
+        app.stop();
+        feed.body().close();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (feedThreads() > threadsBefore && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(threadsBefore, feedThreads());
+    }
+
+    private long feedThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("message-feed") && thread.isAlive())
+                .count();
+    }
+
+    /**
+     * @return the next line that is neither blank nor a comment, waiting at most five seconds for it
+     */
+    private String nextEventLine(Iterator<String> lines) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            while (lines.hasNext()) {
+                String line = lines.next();
+                if (!line.isEmpty() && !line.startsWith(":")) {
+                    return line;
+                }
+            }
+            return null;
+        }).get(5, TimeUnit.SECONDS);
+    }
+}
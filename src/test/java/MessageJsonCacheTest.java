@@ -0,0 +1,44 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Util.JsonSupport;
+import Util.MessageJsonCache;
+
+public class MessageJsonCacheTest {
+
+    /**
+     * Encoding one message, then a list of four and a list of twenty through a cache of ten entries
+     *
+     * Expected: both lists encode exactly as Jackson does; the short one is cached, and the long one is encoded
+     * directly without evicting the single message
+     */
+    @Test
+    public void onlyShortListsGoThroughTheCache() throws Exception {
+        MessageJsonCache cache = new MessageJsonCache(10);
+        Message hot = new Message(100, 1, "hot message", 1669947792);
+        Assert.assertArrayEquals(JsonSupport.MESSAGE_WRITER.writeValueAsBytes(hot), cache.toJson(hot));
+
+        List<Message> shortList = messages(4);
+        Assert.assertArrayEquals(JsonSupport.MESSAGE_LIST_WRITER.writeValueAsBytes(shortList),
+                cache.toJson(shortList));
+        Assert.assertEquals(5, cache.getCache().size());
+
+        List<Message> longList = messages(20);
+        Assert.assertArrayEquals(JsonSupport.MESSAGE_LIST_WRITER.writeValueAsBytes(longList),
+                cache.toJson(longList));
+        Assert.assertEquals(5, cache.getCache().size());
+        Assert.assertEquals(0, cache.getCache().getEvictions());
+    }
+
+    private List<Message> messages(int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            messages.add(new Message(i, 1, "message " + i, 1669947792 + i));
+        }
+        return messages;
+    }
+}
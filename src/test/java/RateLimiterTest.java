@@ -0,0 +1,37 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.RateLimiter;
+
+public class RateLimiterTest {
+
+    /**
+     * Taking a token for more keys than maxKeys, each of which leaves its bucket short of full
+     *
+     * Expected: the limiter never holds more than maxKeys buckets
+     */
+    @Test
+    public void bucketCountIsBounded() {
+        RateLimiter limiter = new RateLimiter(1.0 / 60, 5, 60000, 100);
+        for (int key = 0; key < 10000; key++) {
+            Assert.assertEquals(0, limiter.tryAcquire(key));
+            Assert.assertTrue(limiter.size() <= 100);
+        }
+    }
+
+    /**
+     * Taking several tokens at once, more than are left, then giving some back
+     *
+     * Expected: a request for more than is left takes nothing, and released tokens can be taken again
+     */
+    @Test
+    public void permitsAreTakenAllOrNone() {
+        RateLimiter limiter = new RateLimiter(1.0 / 60, 5, 60000, 100);
+        Assert.assertEquals(0, limiter.tryAcquire(1, 3));
+        Assert.assertTrue(limiter.tryAcquire(1, 3) > 0);
+        Assert.assertEquals(0, limiter.tryAcquire(1, 2));
+        Assert.assertTrue(limiter.tryAcquire(1) > 0);
+        limiter.release(1, 2);
+        Assert.assertEquals(0, limiter.tryAcquire(1, 2));
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MultiGetResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesByIdsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add two more messages, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        insertMessage("test message 2", 1669947790);
+        insertMessage("test message 3", 1669947791);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=3,99,1 (message 99 does not exist), twice so the
+     * second answer comes from the cache
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: messages 3 and 1 in that order, and 99 among the missing ids
+     */
+    @Test
+    public void getMessagesByIdsKeepsRequestOrder() throws IOException, InterruptedException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages?ids=3,99,1"))
+                    .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+
+            MultiGetResult<Message> result = objectMapper.readValue(response.body(),
+                    new TypeReference<MultiGetResult<Message>>(){});
+            List<Message> expectedItems = new ArrayList<>();
+            expectedItems.add(new Message(3, 1, "test message 3", 1669947791));
+            expectedItems.add(new Message(1, 1, "test message 1", 1669947792));
+            Assert.assertEquals(expectedItems, result.getItems());
+            Assert.assertEquals(Arrays.asList(99), result.getMissing_ids());
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=1,abc
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesByIdsInvalidId() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?ids=1,abc"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private void insertMessage(String text, long timePostedEpoch) {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(
+                        "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            ps.setString(1, text);
+            ps.setLong(2, timePostedEpoch);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
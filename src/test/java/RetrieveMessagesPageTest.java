@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.Page;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add two more messages, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        insertMessage("test message 2", 1669947790);
+        insertMessage("test message 3", 1669947791);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2, then following next_cursor
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: pages of messages in message_id order, the last one without a next_cursor
+     */
+    @Test
+    public void getMessagesPageFollowsCursor() throws IOException, InterruptedException {
+        Page<Message> first = getPage("http://localhost:8080/messages?limit=2");
+        List<Message> expectedFirst = new ArrayList<>();
+        expectedFirst.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedFirst.add(new Message(2, 1, "test message 2", 1669947790));
+        Assert.assertEquals(expectedFirst, first.getItems());
+        Assert.assertNotNull(first.getNext_cursor());
+
+        Page<Message> second = getPage("http://localhost:8080/messages?limit=2&cursor=" + first.getNext_cursor());
+        List<Message> expectedSecond = new ArrayList<>();
+        expectedSecond.add(new Message(3, 1, "test message 3", 1669947791));
+        Assert.assertEquals(expectedSecond, second.getItems());
+        Assert.assertNull(second.getNext_cursor());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/1/messages?limit=2, then following next_cursor
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: pages of the account's messages in time_posted_epoch order
+     */
+    @Test
+    public void getMessagesPageForUserOrderedByTime() throws IOException, InterruptedException {
+        Page<Message> first = getPage("http://localhost:8080/accounts/1/messages?limit=2");
+        List<Message> expectedFirst = new ArrayList<>();
+        expectedFirst.add(new Message(2, 1, "test message 2", 1669947790));
+        expectedFirst.add(new Message(3, 1, "test message 3", 1669947791));
+        Assert.assertEquals(expectedFirst, first.getItems());
+
+        Page<Message> second = getPage("http://localhost:8080/accounts/1/messages?limit=2&cursor="
+                + first.getNext_cursor());
+        List<Message> expectedSecond = new ArrayList<>();
+        expectedSecond.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedSecond, second.getItems());
+        Assert.assertNull(second.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a malformed cursor
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesPageInvalidCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?cursor=not-a-cursor"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private Page<Message> getPage(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body().toString(), new TypeReference<Page<Message>>(){});
+    }
+
+    private void insertMessage(String text, long timePostedEpoch) {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(
+                        "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            ps.setString(1, text);
+            ps.setLong(2, timePostedEpoch);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
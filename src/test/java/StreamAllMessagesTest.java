@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StreamAllMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add a second message, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        insertSecondMessage();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("http.export.maxConcurrent");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=json
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON array of all messages
+     */
+    @Test
+    public void streamAllMessagesAsJsonArray() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=json"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+        List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedMessages(), actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=ndjson
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one JSON message per line
+     */
+    @Test
+    public void streamAllMessagesAsNdjson() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=ndjson"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+        List<Message> actualResult = new ArrayList<>();
+        for (String line : response.body().toString().split("\n")) {
+            actualResult.add(objectMapper.readValue(line, Message.class));
+        }
+        Assert.assertEquals(expectedMessages(), actualResult);
+    }
+
+    /**
+     * Adding 10000 messages, more than one segment of the export, then sending an http request to GET
+     * localhost:8080/messages?stream=ndjson
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message exactly once, in message_id order
+     */
+    @Test
+    public void streamSpansSegments() throws IOException, InterruptedException, SQLException {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement("insert into message (posted_by, message_text,"
+                        + " time_posted_epoch) select 1, 'bulk message', x from system_range(1, 10000)")) {
+            ps.executeUpdate();
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=ndjson"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        String[] lines = response.body().split("\n");
+        Assert.assertEquals(10002, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            Assert.assertEquals(i + 1, objectMapper.readValue(lines[i], Message.class).getMessage_id());
+        }
+    }
+
+    /**
+     * Restarting the app with http.export.maxConcurrent set to 0, then sending an http request to GET
+     * localhost:8080/messages?stream=json and another to GET localhost:8080/messages
+     * 
+     * Expected Response:
+     *  Status Code: 503 with a Retry-After header for the stream, and 200 for the list, which is not an export
+     */
+    @Test
+    public void exportsOverTheLimitAreRefused() throws IOException, InterruptedException {
+        app.stop();
+        System.setProperty("http.export.maxConcurrent", "0");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest streamRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=json"))
+                .build();
+        HttpResponse<String> response = webClient.send(streamRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(503, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Retry-After").isPresent());
+
+        HttpRequest listRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        Assert.assertEquals(200, webClient.send(listRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private List<Message> expectedMessages() {
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947793));
+        return expectedResult;
+    }
+
+    private void insertSecondMessage() {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(
+                        "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            ps.setString(1, "test message 2");
+            ps.setLong(2, 1669947793);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TombstoneCompactionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app keeping tombstones no time at all and
+     * compacting on every delete.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("sync.tombstoneRetentionMillis", "0");
+        System.setProperty("sync.compactionIntervalMillis", "0");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("sync.tombstoneRetentionMillis");
+        System.clearProperty("sync.compactionIntervalMillis");
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages, then DELETE localhost:8080/messages/1 and, a little
+     * later, DELETE localhost:8080/messages/2, then GET localhost:8080/messages/changes?since=1 and ?since=0
+     *
+     * Expected Response:
+     *  Status Code: 410 for since=1, whose deletion of message 1 was compacted; 200 for a new sync from 0
+     */
+    @Test
+    public void cursorBeforeCompactedTombstoneIsGone() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        for (int id = 1; id <= 2; id++) {
+            HttpRequest deleteMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/" + id))
+                    .DELETE()
+                    .build();
+            Assert.assertEquals(200,
+                    webClient.send(deleteMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+            // the second delete compacts the first tombstone, which is then strictly older than the cutoff
+            Thread.sleep(20);
+        }
+
+        HttpRequest staleRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=1"))
+                .build();
+        Assert.assertEquals(410, webClient.send(staleRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest fullRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=0"))
+                .build();
+        HttpResponse<String> response = webClient.send(fullRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+}
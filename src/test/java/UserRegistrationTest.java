@@ -3,6 +3,9 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -141,4 +144,40 @@ public class UserRegistrationTest {
         Assert.assertEquals("", response.body().toString());
 
     }
+
+    /**
+     * Sending 20 simultaneous http requests to POST localhost:8080/register with the same new username
+     * 
+     * Expected Response:
+     *  Status Code: 200 for exactly one of them, 400 for the rest
+     *  Response Body: JSON representation of user object for the one that succeeded
+     */
+    @Test
+    public void registerUserConcurrentDuplicateUsername() throws Exception {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"user\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(webClient.sendAsync(postRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+        int succeeded = 0;
+        for (CompletableFuture<HttpResponse<String>> future : responses) {
+            HttpResponse<String> response = future.get();
+            if (response.statusCode() == 200) {
+                succeeded++;
+                Account actualAccount = objectMapper.readValue(response.body(), Account.class);
+                Assert.assertEquals("user", actualAccount.getUsername());
+            } else {
+                Assert.assertEquals(400, response.statusCode());
+                Assert.assertEquals("", response.body());
+            }
+        }
+        Assert.assertEquals(1, succeeded);
+
+    }
 }
@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class WriteRateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app allowing each account a burst of two
+     * writes refilled at one per minute.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("ratelimit.write.perSecond", String.valueOf(1.0 / 60));
+        System.setProperty("ratelimit.write.burst", "2");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("ratelimit.write.perSecond");
+        System.clearProperty("ratelimit.write.burst");
+    }
+
+    /**
+     * Sending two http requests to POST localhost:8080/messages, then PATCH localhost:8080/messages/1, all for
+     * user 1
+     * 
+     * Expected Response:
+     *  Status Code: 200 for both posts, then 429 with a Retry-After header for the patch, which leaves message 1
+     *  unchanged
+     */
+    @Test
+    public void writesOverTheRateAreRejected() throws IOException, InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"hello message\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+        }
+
+        HttpRequest patchMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(patchMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(429, response.statusCode());
+        long retryAfter = Long.parseLong(response.headers().firstValue("Retry-After").orElse("0"));
+        Assert.assertTrue(retryAfter > 0 && retryAfter <= 60);
+
+        HttpRequest getMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> message = webClient.send(getMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertTrue(message.body(), message.body().contains("\"test message 1\""));
+    }
+
+    /**
+     * Sending two http requests to POST localhost:8080/messages for user 1, then PATCH localhost:8080/messages/1,
+     * reading GET localhost:8080/messages/changes?since=0 before and after the patch
+     * 
+     * Expected Response:
+     *  Status Code: 429 for the patch, which is refused before the update runs, so it takes no change_seq and
+     *  the change log's next_since does not move
+     */
+    @Test
+    public void rejectedPatchDoesNotWrite() throws IOException, InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"hello message\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+        long before = nextSince();
+
+        HttpRequest patchMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(429, webClient.send(patchMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(before, nextSince());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with three messages from user 1, more than the
+     * burst of two, then POST localhost:8080/messages for user 1
+     * 
+     * Expected Response:
+     *  Status Code: 200 for the batch, which costs the whole burst rather than being refused forever, then 429
+     */
+    @Test
+    public void batchLargerThanTheBurstCostsTheBurst() throws IOException, InterruptedException {
+        Assert.assertEquals(200, postBatch(3).statusCode());
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(429, response.statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages for user 1, then POST
+     * localhost:8080/messages/batch with two messages from user 1
+     * 
+     * Expected Response:
+     *  Status Code: 429 with a Retry-After header for the batch, and none of its messages created
+     */
+    @Test
+    public void batchOverTheRateIsRejected() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = postBatch(2);
+        Assert.assertEquals(429, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Retry-After").isPresent());
+
+        HttpRequest getMessagesRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse<String> messages = webClient.send(getMessagesRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertFalse(messages.body(), messages.body().contains("batch message"));
+    }
+
+    /**
+     * Sending three http requests to POST localhost:8080/messages for user 5, which does not exist
+     * 
+     * Expected Response:
+     *  Status Code: 400 for all three; writes for unknown accounts spend no tokens
+     */
+    @Test
+    public void unknownAccountsSpendNoTokens() throws IOException, InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":5, " +
+                            "\"message_text\": \"hello message\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(400, response.statusCode());
+        }
+    }
+
+    private long nextSince() throws IOException, InterruptedException {
+        HttpRequest getChangesRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=0"))
+                .build();
+        HttpResponse<String> response = webClient.send(getChangesRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return new ObjectMapper().readTree(response.body()).get("next_since").asLong();
+    }
+
+    private HttpResponse<String> postBatch(int count) throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"posted_by\":1, \"message_text\": \"batch message ")
+                    .append(i).append("\", \"time_posted_epoch\": 1669947792}");
+        }
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}